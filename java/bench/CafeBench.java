@@ -0,0 +1,299 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * This class measures the Cafe data-access methods and the console flows
+ * built on them. Every benchmark runs a number of warm-up iterations that
+ * are thrown away, then a number of timed iterations, and reports
+ * throughput, mean latency, percentiles and errors.
+ *
+ * The console flows (LogIn, AddOrder, UpdateOrder, ViewOrderStatus,
+ * ViewCurrentOrder) are run unchanged: their keyboard input is scripted
+ * through Cafe.in and their output is discarded. The flows report errors
+ * on System.err instead of throwing, so an iteration that writes to
+ * System.err is counted as an error.
+ *
+ * The database is reached through a DataSource, by default the local
+ * PostgreSQL server. Setting cafe.bench.url points it at any other JDBC
+ * url, for example an embedded in-process database in PostgreSQL mode:
+ *
+ *   -Dcafe.bench.url="jdbc:h2:mem:cafe;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE"
+ *   -Dcafe.bench.init=../../sql/src/create_tables.sql
+ *
+ * Statements of the cafe.bench.init scripts that fail (such as the DROPs
+ * on an empty database) are reported and skipped. A stand-in only
+ * understands part of the PostgreSQL dialect, so flows that rely on
+ * PostgreSQL-only syntax (INSERT ... RETURNING, ::regclass) show up as
+ * errors there; compare numbers only between runs on the same backend.
+ *
+ * Other properties: cafe.bench.warmup (200), cafe.bench.iterations
+ * (1000), cafe.bench.items (items per AddOrder, 3) and cafe.bench.only
+ * (comma separated benchmark names).
+ *
+ * The benchmark works as its own customer, cafe_bench, and deletes the
+ * orders it placed when it is done.
+ *
+ * Usage: java CafeBench <dbname> <port>
+ */
+public class CafeBench {
+
+   // login and password of the user the flows act as
+   private static final String LOGIN = "cafe_bench";
+
+   // employee used for the staff only flows
+   private static final String STAFF = "cafe_bench_staff";
+
+   // one benchmarked operation, run once per iteration
+   private interface Op {
+      void run (int iteration) throws Exception;
+   }//end Op
+
+   // swallows console output while the flows run
+   private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+      public void write (int b) { }
+      public void write (byte[] b, int off, int len) { }
+   });
+
+   // counts what the flows print as errors
+   private static final class CountingStream extends OutputStream {
+      long bytes = 0;
+      public void write (int b) { ++this.bytes; }
+      public void write (byte[] b, int off, int len) { this.bytes += len; }
+   }//end CountingStream
+
+   public static void main (String[] args) throws Exception {
+      String url = System.getProperty("cafe.bench.url");
+      if (url == null){
+         if (args.length < 2){
+            System.err.println("Usage: java CafeBench <dbname> <port>  (or -Dcafe.bench.url=<jdbc url>)");
+            return;
+         }//end if
+         url = "jdbc:postgresql://127.0.0.1:" + args[1] + "/" + args[0];
+      }//end if
+      int warmup = Integer.getInteger("cafe.bench.warmup", 200);
+      int iterations = Integer.getInteger("cafe.bench.iterations", 1000);
+      int items = Integer.getInteger("cafe.bench.items", 3);
+      String only = System.getProperty("cafe.bench.only");
+
+      DataSource dataSource = new DriverManagerDataSource(url);
+      String init = System.getProperty("cafe.bench.init");
+      if (init != null)
+         for (String script : init.split(","))
+            runScript(dataSource, script.trim());
+
+      System.setProperty("cafe.render.stats", "false");
+      final Cafe esql = new Cafe(dataSource);
+      esql.setRenderer(new TableRenderer(DISCARD, 500, Integer.MAX_VALUE, null, false));
+      try{
+         final Fixture f = setUp(esql, items);
+         System.out.println("url: " + url);
+         System.out.printf("warmup=%d iterations=%d items=%d%n%n", warmup, iterations, items);
+         System.out.printf("%-28s %10s %10s %10s %10s %10s %10s %7s%n", "benchmark", "ops/s",
+            "mean us", "p50 us", "p90 us", "p99 us", "max us", "errors");
+
+         Map<String, Op> ops = new LinkedHashMap<String, Op>();
+         ops.put("executeQuery", i ->
+            esql.executeQuery("SELECT * FROM Menu M WHERE M.itemName = ?", f.item(i)));
+         ops.put("executeQueryAndReturnResult", i ->
+            esql.executeQueryAndReturnResult("SELECT * FROM ItemStatus I WHERE I.orderid = ?", f.orderid));
+         ops.put("executeUpdate", i ->
+            esql.executeUpdate("UPDATE Users SET favItems = favItems WHERE login = ?", LOGIN));
+         ops.put("LogIn+find_type", i -> {
+            script(LOGIN + "\n" + LOGIN + "\n");
+            Cafe.setAuthorisedUser(Cafe.LogIn(esql));
+            Cafe.find_type(esql);
+         });
+         ops.put("AddOrder(" + items + ")", i -> {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < items; ++k)
+               sb.append(f.item(i + k)).append("\n1\nnull\n").append(k + 1 < items ? "yes\n" : "no\n");
+            script(sb.toString());
+            Cafe.AddOrder(esql);
+         });
+         // alternate +1 / -1 so the order stays the same size
+         ops.put("UpdateOrder", i -> {
+            script(f.orderid + "\n" + f.item(0) + "\n" + (i % 2 == 0 ? "1" : "-1") + "\nnull\nno\n");
+            Cafe.UpdateOrder(esql);
+         });
+         ops.put("ViewOrderStatus", i -> {
+            script(f.orderid + "\n");
+            Cafe.ViewOrderStatus(esql);
+         });
+         ops.put("ViewCurrentOrder", i -> {
+            Cafe.setAuthorisedUser(STAFF);
+            Cafe.ViewCurrentOrder(esql);
+         });
+
+         for (Map.Entry<String, Op> e : ops.entrySet()){
+            if (only != null && !Arrays.asList(only.split(",")).contains(e.getKey()))
+               continue;
+            Cafe.setAuthorisedUser(LOGIN);
+            measure(e.getKey(), e.getValue(), warmup, iterations);
+         }//end for
+         System.out.println();
+         System.out.println(esql.getPool().getStats());
+      }finally{
+         tearDown(esql);
+         esql.cleanup();
+      }//end try
+   }//end main
+
+   /*
+    * Keys every benchmark works on.
+    */
+   private static final class Fixture {
+      String[] items;
+      int orderid;
+
+      String item (int i) {
+         return this.items[i % this.items.length];
+      }//end item
+   }//end Fixture
+
+   private static Fixture setUp (Cafe esql, int items) throws Exception {
+      if (!esql.executeExists("SELECT 1 FROM Users WHERE login = ?", LOGIN))
+         esql.executeUpdate("INSERT INTO Users (login, phoneNum, password, favItems, type) VALUES (?, NULL, ?, '', 'Customer')",
+            LOGIN, LOGIN);
+      if (!esql.executeExists("SELECT 1 FROM Users WHERE login = ?", STAFF))
+         esql.executeUpdate("INSERT INTO Users (login, phoneNum, password, favItems, type) VALUES (?, NULL, ?, '', 'Employee')",
+            STAFF, STAFF);
+      if (esql.getMenu().size() == 0)
+         throw new IllegalStateException("the Menu table is empty, load some menu items first");
+
+      Fixture f = new Fixture();
+      List<MenuItem> menu = new ArrayList<MenuItem>(esql.getMenu().items());
+      f.items = new String[menu.size()];
+      for (int i = 0; i < f.items.length; ++i)
+         f.items[i] = menu.get(i).getName();
+
+      // one open order for UpdateOrder and ViewOrderStatus to work on
+      OrderCart cart = new OrderCart(esql.getMenu());
+      for (int k = 0; k < Math.min(items, f.items.length); ++k)
+         cart.add(f.items[k], 1, "null");
+      f.orderid = esql.getOrders().placeOrder(esql.getOrders().openSession(LOGIN), cart);
+      return f;
+   }//end setUp
+
+   private static void tearDown (Cafe esql) {
+      try{
+         esql.inTransaction(() -> {
+            esql.executeUpdate("DELETE FROM ItemStatus WHERE orderid IN (SELECT orderid FROM Orders WHERE login = ?)", LOGIN);
+            return esql.executeUpdate("DELETE FROM Orders WHERE login = ?", LOGIN);
+         });
+      }catch (SQLException e){
+         System.err.println("could not remove the benchmark orders: " + e.getMessage());
+      }//end try
+   }//end tearDown
+
+   private static void script (String input) {
+      Cafe.in = new BufferedReader(new StringReader(input));
+   }//end script
+
+   private static void measure (String name, Op op, int warmup, int iterations) {
+      PrintStream out = System.out;
+      PrintStream err = System.err;
+      CountingStream errBytes = new CountingStream();
+      long[] nanos = new long[iterations];
+      int errors = 0;
+      System.setOut(DISCARD);
+      System.setErr(new PrintStream(errBytes));
+      try{
+         for (int i = 0; i < warmup; ++i)
+            run(op, i);
+         errBytes.bytes = 0;
+         long start = System.nanoTime();
+         for (int i = 0; i < iterations; ++i){
+            long before = errBytes.bytes;
+            long t = System.nanoTime();
+            boolean ok = run(op, warmup + i);
+            nanos[i] = System.nanoTime() - t;
+            if (!ok || errBytes.bytes != before)
+               ++errors;
+         }//end for
+         long total = System.nanoTime() - start;
+
+         Arrays.sort(nanos);
+         out.printf("%-28s %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %7d%n", name,
+            iterations / (total / 1e9), total / 1000.0 / iterations,
+            percentile(nanos, 0.50), percentile(nanos, 0.90), percentile(nanos, 0.99),
+            nanos[nanos.length - 1] / 1000.0, errors);
+      }finally{
+         System.setOut(out);
+         System.setErr(err);
+      }//end try
+   }//end measure
+
+   private static boolean run (Op op, int iteration) {
+      try{
+         op.run(iteration);
+         return true;
+      }catch (Exception e){
+         System.err.println(e.getMessage());
+         return false;
+      }//end try
+   }//end run
+
+   private static double percentile (long[] sorted, double p) {
+      int i = (int) Math.ceil(p * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1000.0;
+   }//end percentile
+
+   /*
+    * Runs every ;-terminated statement of a SQL script, skipping the ones
+    * the database rejects.
+    */
+   private static void runScript (DataSource dataSource, String path) throws IOException, SQLException {
+      StringBuilder sb = new StringBuilder();
+      BufferedReader reader = new BufferedReader(new FileReader(path));
+      try{
+         String line;
+         while ((line = reader.readLine()) != null)
+            if (!line.trim().startsWith("--"))
+               sb.append(line).append('\n');
+      }finally{
+         reader.close();
+      }//end try
+      Connection c = dataSource.getConnection();
+      try{
+         Statement stmt = c.createStatement();
+         for (String sql : sb.toString().split(";")){
+            if (sql.trim().isEmpty())
+               continue;
+            try{
+               stmt.execute(sql);
+            }catch (SQLException e){
+               System.err.println(path + ": skipped: " + e.getMessage());
+            }//end try
+         }//end for
+         stmt.close();
+      }finally{
+         c.close();
+      }//end try
+   }//end runScript
+
+}//end CafeBench
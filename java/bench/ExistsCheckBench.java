@@ -0,0 +1,125 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class compares the old SELECT * validation checks with the
+ * executeExists() form for every check Cafe makes, and reports the bytes
+ * the server sends back per check and the time per check.
+ *
+ * Bytes are counted the way the PostgreSQL text protocol frames them: a
+ * RowDescription message (7 bytes + name + 19 bytes per column) and one
+ * DataRow message per row (7 bytes + 4 byte length + value per column).
+ *
+ * Usage: java ExistsCheckBench <dbname> <port> [iterations]
+ */
+public class ExistsCheckBench {
+
+   public static void main (String[] args) throws Exception {
+      if (args.length < 2){
+         System.err.println("Usage: java ExistsCheckBench <dbname> <port> [iterations]");
+         return;
+      }//end if
+      int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+      Class.forName ("org.postgresql.Driver");
+      Cafe esql = new Cafe(args[0], args[1]);
+      try{
+         // pick real keys so every check finds its row
+         ResultTable user = esql.executeQueryForTable("SELECT login, password FROM Users LIMIT 1");
+         ResultTable order = esql.executeQueryForTable("SELECT orderid, login FROM Orders LIMIT 1");
+         ResultTable item = esql.executeQueryForTable("SELECT itemName FROM Menu LIMIT 1");
+         ResultTable status = esql.executeQueryForTable("SELECT orderid, itemName FROM ItemStatus LIMIT 1");
+
+         System.out.printf("%-22s %12s %12s %10s %12s %12s%n", "check", "select* B",
+            "exists B", "saved B", "select* us", "exists us");
+         if (user.getRowCount() > 0){
+            Object[] login = { user.getString(0, 0), user.getString(0, 1) };
+            compare(esql, iterations, "LogIn",
+               "SELECT * FROM Users WHERE login = ? AND password = ?",
+               "SELECT 1 FROM Users WHERE login = ? AND password = ?", login);
+            compare(esql, iterations, "ManagerUpdateUserInfo",
+               "SELECT * FROM Users U WHERE U.login = ?",
+               "SELECT 1 FROM Users U WHERE U.login = ?", new Object[]{ login[0] });
+         }//end if
+         if (item.getRowCount() > 0)
+            compare(esql, iterations, "Menu item",
+               "SELECT * FROM Menu M WHERE M.ItemName = ?",
+               "SELECT 1 FROM Menu M WHERE M.ItemName = ?", new Object[]{ item.getString(0, 0) });
+         if (order.getRowCount() > 0)
+            compare(esql, iterations, "ViewOrderStatus",
+               "SELECT * FROM Orders O WHERE O.orderid = ? AND O.login = ?",
+               "SELECT 1 FROM Orders O WHERE O.orderid = ? AND O.login = ?",
+               new Object[]{ order.getInt(0, 0), order.getString(0, 1) });
+         if (status.getRowCount() > 0)
+            compare(esql, iterations, "UpdateOrder item",
+               "SELECT * FROM ItemStatus I WHERE I.orderid = ? AND itemName = ?",
+               "SELECT 1 FROM ItemStatus I WHERE I.orderid = ? AND itemName = ?",
+               new Object[]{ status.getInt(0, 0), status.getString(0, 1) });
+      }finally{
+         esql.cleanup();
+      }//end try
+   }//end main
+
+   private static void compare (Cafe esql, int iterations, String name, String selectAll,
+                                String exists, Object[] params) throws SQLException {
+      long fullBytes = wireBytes(esql, selectAll, params);
+      long existsBytes = wireBytes(esql, "SELECT EXISTS(" + exists + ")", params);
+
+      // warm up the statement caches and the JIT before timing
+      for (int i = 0; i < Math.min(iterations, 500); ++i){
+         esql.executeQuery(selectAll, params);
+         esql.executeExists(exists, params);
+      }//end for
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; ++i)
+         esql.executeQuery(selectAll, params);
+      double fullUs = (System.nanoTime() - start) / 1000.0 / iterations;
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; ++i)
+         esql.executeExists(exists, params);
+      double existsUs = (System.nanoTime() - start) / 1000.0 / iterations;
+
+      System.out.printf("%-22s %12d %12d %10d %12.1f %12.1f%n", name, fullBytes,
+         existsBytes, fullBytes - existsBytes, fullUs, existsUs);
+   }//end compare
+
+   /*
+    * Bytes of the RowDescription and DataRow messages the query returns.
+    */
+   private static long wireBytes (Cafe esql, String query, Object[] params) throws SQLException {
+      final long[] bytes = { 0 };
+      final boolean[] described = { false };
+      esql.executeQueryAndMap(query, (ResultSet rs) -> {
+         ResultSetMetaData rsmd = rs.getMetaData();
+         int numCol = rsmd.getColumnCount();
+         if (!described[0]){
+            bytes[0] += 7;
+            for (int i = 1; i <= numCol; ++i)
+               bytes[0] += rsmd.getColumnName(i).length() + 19;
+            described[0] = true;
+         }//end if
+         bytes[0] += 7;
+         for (int i = 1; i <= numCol; ++i){
+            String value = rs.getString(i);
+            bytes[0] += 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+         }//end for
+         return null;
+      }, params);
+      return bytes[0];
+   }//end wireBytes
+
+}//end ExistsCheckBench
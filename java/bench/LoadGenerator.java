@@ -0,0 +1,432 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+
+/**
+ * This class puts the cafe under the load of many users at once, to see
+ * how it behaves at peak. Worker threads act as customers, employees and
+ * managers taken from the users file and run these operations through
+ * the OrderService:
+ *
+ *   browse    customer  BrowseMenuName or BrowseMenuType with a word
+ *                       from the menu
+ *   order     customer  AddOrder of one to cafe.load.items menu items
+ *   status    customer  ViewOrderStatus of a recent order of the customer
+ *   advance   employee  EmployeeUpdateOrder, one item of a recent order
+ *                       one step further
+ *   current   employee  ViewCurrentOrder
+ *   pay       employee  marks a recent order paid, so unpaid orders do
+ *                       not pile up
+ *   menu      manager   UpdateMenu, the price or description of an item
+ *                       the generator adds for the run
+ *
+ * Operations arrive at a fixed total rate, spread evenly over the
+ * workers, and each one is picked at random by the weights of the mix.
+ * Latency is counted from when an operation was due, not from when a
+ * worker got to it, so a system that falls behind shows it in the
+ * percentiles instead of hiding it by slowing the arrivals down.
+ *
+ * The report gives for each operation its throughput, latency
+ * percentiles and errors, and separately the errors that were deadlocks
+ * (SQLSTATE 40P01) or serialization failures (40001), which include the
+ * writes that ran out of retries on a changing row. It also gives how
+ * often the writes found their row changed since it was read and tried
+ * again.
+ *
+ * Properties: cafe.load.users (data/users.csv), cafe.load.rate
+ * (operations per second, 200), cafe.load.seconds (30),
+ * cafe.load.threads (16), cafe.load.items (3) and cafe.load.mix (weights,
+ * "browse=35,order=20,status=20,advance=10,current=5,pay=5,menu=5"). The
+ * users of the file must be loaded in the database; the pool is sized to
+ * the workers unless cafe.pool.maxSize is set.
+ *
+ * The orders placed and the menu item added are deleted at the end.
+ *
+ * Usage: java LoadGenerator <dbname> <port>
+ */
+public class LoadGenerator {
+
+   // the menu item the managers edit
+   private static final String MENU_ITEM = "cafe_load_item";
+
+   // how many of the last placed orders the other operations pick from
+   private static final int RECENT = 1024;
+
+   private static final String DEADLOCK = "40P01";
+   private static final String SERIALIZATION_FAILURE = "40001";
+
+   // swallows the rendered tables
+   private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+      public void write (int b) { }
+      public void write (byte[] b, int off, int len) { }
+   });
+
+   // one kind of operation, its share of the load and what it cost
+   private static final class Op {
+      final String name;
+      final int weight;
+      final LatencyHistogram latency = new LatencyHistogram();
+      final AtomicLong errors = new AtomicLong();
+      final AtomicLong deadlocks = new AtomicLong();
+      final AtomicLong serializationFailures = new AtomicLong();
+
+      Op (String name, int weight) {
+         this.name = name;
+         this.weight = weight;
+      }//end Op
+   }//end Op
+
+   // an order a customer placed during the run
+   private static final class Placed {
+      final int orderid;
+      final Session customer;
+      final String[] items;
+
+      Placed (int orderid, Session customer, String[] items) {
+         this.orderid = orderid;
+         this.customer = customer;
+         this.items = items;
+      }//end Placed
+   }//end Placed
+
+   private final Cafe _esql;
+   private final OrderService _orders;
+   private final int _items;
+
+   // logins of the users file by type
+   private final List<String> _customers = new ArrayList<String>();
+   private final List<Session> _employees = new ArrayList<Session>();
+   private final List<Session> _managers = new ArrayList<Session>();
+
+   // names of the menu items customers order and words they browse for
+   private String[] _menu;
+   private String[] _words;
+
+   // the last RECENT orders placed, and every orderid to delete at the end
+   private final AtomicReferenceArray<Placed> _recent = new AtomicReferenceArray<Placed>(RECENT);
+   private final AtomicLong _placedCount = new AtomicLong();
+   private final ConcurrentLinkedQueue<Integer> _placed = new ConcurrentLinkedQueue<Integer>();
+
+   private LoadGenerator (Cafe esql, int items) {
+      this._esql = esql;
+      this._orders = esql.getOrders();
+      this._items = Math.max(1, items);
+   }//end LoadGenerator
+
+   public static void main (String[] args) throws Exception {
+      String url = System.getProperty("cafe.bench.url");
+      if (url == null){
+         if (args.length < 2){
+            System.err.println("Usage: java LoadGenerator <dbname> <port>  (or -Dcafe.bench.url=<jdbc url>)");
+            return;
+         }//end if
+         url = "jdbc:postgresql://127.0.0.1:" + args[1] + "/" + args[0];
+      }//end if
+      String users = System.getProperty("cafe.load.users", "data/users.csv");
+      int rate = Integer.getInteger("cafe.load.rate", 200);
+      int seconds = Integer.getInteger("cafe.load.seconds", 30);
+      int threads = Integer.getInteger("cafe.load.threads", 16);
+      int items = Integer.getInteger("cafe.load.items", 3);
+      List<Op> mix = mix(System.getProperty("cafe.load.mix",
+         "browse=35,order=20,status=20,advance=10,current=5,pay=5,menu=5"));
+
+      DataSource dataSource = new DriverManagerDataSource(url);
+      if (System.getProperty("cafe.pool.maxSize") == null)
+         System.setProperty("cafe.pool.maxSize", Integer.toString(threads + 2));
+      System.setProperty("cafe.render.stats", "false");
+      Cafe esql = new Cafe(dataSource);
+      LoadGenerator load = new LoadGenerator(esql, items);
+      try{
+         load.setUp(users);
+         System.out.println("url: " + url + "  users: " + users);
+         System.out.printf("rate=%d/s seconds=%d threads=%d customers=%d employees=%d managers=%d%n%n", rate, seconds,
+            threads, load._customers.size(), load._employees.size(), load._managers.size());
+         long elapsed = load.run(mix, rate, seconds, threads);
+         report(mix, elapsed);
+         System.out.println();
+         CafeMetrics metrics = esql.getMetrics();
+         for (CafeMetrics.Operation op : CafeMetrics.Operation.values())
+            if (metrics.getConflicts(op) > 0)
+               System.out.printf("%-18s %d version conflict(s), %d retried%n", op.getLabel(),
+                  metrics.getConflicts(op), metrics.getRetries(op));
+         System.out.println();
+         System.out.println(esql.getPool().getStats());
+      }finally{
+         load.tearDown();
+         esql.cleanup();
+      }//end try
+   }//end main
+
+   /*
+    * Reads the users file and the menu, and adds the item the managers
+    * edit. Staff the database does not know are left out; customers are
+    * only looked up when they place an order.
+    */
+   private void setUp (String users) throws IOException, SQLException {
+      BufferedReader reader = new BufferedReader(new FileReader(users));
+      try{
+         String line;
+         while ((line = reader.readLine()) != null){
+            String[] f = line.split(";", -1);
+            if (f.length < 5 || f[0].trim().isEmpty())
+               continue;
+            String type = f[4].trim();
+            if (type.equals("Customer")){
+               this._customers.add(f[0]);
+               continue;
+            }//end if
+            Session session = this._orders.openSession(f[0]);
+            if (session != null && type.equals("Employee"))
+               this._employees.add(session);
+            else if (session != null && type.equals("Manager"))
+               this._managers.add(session);
+         }//end while
+      }finally{
+         reader.close();
+      }//end try
+      if (this._customers.isEmpty())
+         throw new IllegalStateException(users + " has no customers");
+      if (this._esql.getMenu().size() == 0)
+         throw new IllegalStateException("the Menu table is empty, load some menu items first");
+
+      List<String> menu = new ArrayList<String>();
+      List<String> words = new ArrayList<String>();
+      for (MenuItem item : this._esql.getMenu().items()){
+         if (item.getName().equals(MENU_ITEM))
+            continue;
+         menu.add(item.getName());
+         words.add(item.getName().substring(0, Math.min(3, item.getName().length())));
+         words.add(item.getType());
+      }//end for
+      this._menu = menu.toArray(new String[0]);
+      this._words = words.toArray(new String[0]);
+
+      if (!this._managers.isEmpty() && this._esql.getMenu().get(MENU_ITEM) == null)
+         this._orders.addMenuItem(this._managers.get(0), new MenuItem(MENU_ITEM, "Load", 1.0, "added by LoadGenerator", ""));
+   }//end setUp
+
+   /*
+    * Runs the mix for the given time and returns how long it took in
+    * nanoseconds, including the operations that were still running.
+    */
+   private long run (final List<Op> mix, int rate, int seconds, int threads) throws InterruptedException {
+      int totalWeight = 0;
+      for (Op op : mix)
+         totalWeight += op.weight;
+      final int weights = totalWeight;
+
+      // each worker keeps its share of the rate on a fixed schedule
+      final long periodNanos = TimeUnit.SECONDS.toNanos(1) * threads / Math.max(1, rate);
+      final long begin = System.nanoTime();
+      final long end = begin + TimeUnit.SECONDS.toNanos(seconds);
+      List<Thread> workers = new ArrayList<Thread>();
+      for (int w = 0; w < threads; ++w){
+         final long offset = periodNanos * w / threads;
+         Thread t = new Thread(() -> {
+            TableRenderer renderer = new TableRenderer(DISCARD, 500, Integer.MAX_VALUE, null, false);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long due = begin + offset;
+            while (due < end){
+               long wait = due - System.nanoTime();
+               if (wait > 0)
+                  LockSupport.parkNanos(wait);
+               Op op = pick(mix, random.nextInt(weights));
+               try{
+                  perform(op.name, random, renderer);
+               }catch (Exception e){
+                  count(op, e);
+               }//end try
+               op.latency.record(System.nanoTime() - due);
+               due += periodNanos;
+            }//end while
+         }, "load-worker-" + w);
+         workers.add(t);
+         t.start();
+      }//end for
+      for (Thread t : workers)
+         t.join();
+      return System.nanoTime() - begin;
+   }//end run
+
+   private void perform (String op, ThreadLocalRandom random, ResultRenderer renderer) throws Exception {
+      switch (op){
+         case "browse":{
+            String word = this._words[random.nextInt(this._words.length)];
+            if (random.nextBoolean())
+               this._orders.browseMenuByName(word, renderer);
+            else
+               this._orders.browseMenuByType(word, renderer);
+            return;
+         }
+         case "order":{
+            Session customer = this._orders.openSession(this._customers.get(random.nextInt(this._customers.size())));
+            if (customer == null)
+               throw new IllegalStateException("a customer of the users file is not in the database");
+            OrderCart cart = new OrderCart(this._esql.getMenu());
+            int lines = 1 + random.nextInt(Math.min(this._items, this._menu.length));
+            for (int k = 0; k < lines; ++k)
+               cart.add(this._menu[random.nextInt(this._menu.length)], 1 + random.nextInt(3), "null");
+            String[] items = new String[cart.size()];
+            for (int k = 0; k < items.length; ++k)
+               items[k] = cart.getName(k);
+            int orderid = this._orders.placeOrder(customer, cart);
+            this._placed.add(orderid);
+            this._recent.set((int) (this._placedCount.getAndIncrement() % RECENT), new Placed(orderid, customer, items));
+            return;
+         }
+         case "status":{
+            Placed order = recent(random);
+            if (order != null)
+               this._orders.viewOrderStatus(order.customer, order.orderid, renderer);
+            return;
+         }
+         case "advance":{
+            Placed order = recent(random);
+            if (order != null)
+               this._orders.advanceItemStatus(staff(this._employees, random), order.orderid,
+                  order.items[random.nextInt(order.items.length)]);
+            return;
+         }
+         case "current":
+            this._orders.viewCurrentOrders(staff(this._employees, random), renderer);
+            return;
+         case "pay":{
+            Placed order = recent(random);
+            if (order != null)
+               this._orders.markPaid(staff(this._employees, random), order.orderid);
+            return;
+         }
+         case "menu":
+            if (random.nextBoolean())
+               this._orders.updateMenuItem(staff(this._managers, random), MENU_ITEM, OrderService.MenuField.PRICE,
+                  Double.valueOf(1 + random.nextInt(500) / 100.0));
+            else
+               this._orders.updateMenuItem(staff(this._managers, random), MENU_ITEM, OrderService.MenuField.DESCRIPTION,
+                  "edited by LoadGenerator " + random.nextInt(1000));
+            return;
+         default:
+            throw new IllegalArgumentException("unknown operation " + op);
+      }//end switch
+   }//end perform
+
+   // a random one of the last orders placed, null before the first one
+   private Placed recent (ThreadLocalRandom random) {
+      long placed = this._placedCount.get();
+      if (placed == 0)
+         return null;
+      return this._recent.get(random.nextInt((int) Math.min(placed, RECENT)));
+   }//end recent
+
+   private static Session staff (List<Session> sessions, ThreadLocalRandom random) {
+      if (sessions.isEmpty())
+         throw new IllegalStateException("the users file has no staff of the type this operation needs");
+      return sessions.get(random.nextInt(sessions.size()));
+   }//end staff
+
+   private static Op pick (List<Op> mix, int ticket) {
+      for (Op op : mix){
+         ticket -= op.weight;
+         if (ticket < 0)
+            return op;
+      }//end for
+      return mix.get(mix.size() - 1);
+   }//end pick
+
+   /*
+    * Counts a failed operation, and whether any SQLException in its
+    * causes was a deadlock or a serialization failure.
+    */
+   private static void count (Op op, Throwable e) {
+      op.errors.incrementAndGet();
+      for (Throwable t = e; t != null; t = t.getCause()){
+         for (SQLException s = t instanceof SQLException ? (SQLException) t : null; s != null; s = s.getNextException()){
+            if (DEADLOCK.equals(s.getSQLState())){
+               op.deadlocks.incrementAndGet();
+               return;
+            }//end if
+            if (SERIALIZATION_FAILURE.equals(s.getSQLState())){
+               op.serializationFailures.incrementAndGet();
+               return;
+            }//end if
+         }//end for
+      }//end for
+   }//end count
+
+   private static List<Op> mix (String spec) {
+      Map<String, Op> ops = new LinkedHashMap<String, Op>();
+      for (String part : spec.split(",")){
+         String[] kv = part.split("=");
+         if (kv.length != 2)
+            throw new IllegalArgumentException("cafe.load.mix must look like browse=35,order=20, not " + spec);
+         int weight = Integer.parseInt(kv[1].trim());
+         if (weight > 0)
+            ops.put(kv[0].trim(), new Op(kv[0].trim(), weight));
+      }//end for
+      if (ops.isEmpty())
+         throw new IllegalArgumentException("cafe.load.mix has no operation with a positive weight");
+      return new ArrayList<Op>(ops.values());
+   }//end mix
+
+   private static void report (List<Op> mix, long elapsedNanos) {
+      System.out.printf("%-10s %8s %10s %10s %10s %10s %10s %10s %8s %10s %14s%n", "operation", "ops", "ops/s",
+         "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "errors", "deadlocks", "serialization");
+      long ops = 0;
+      long errors = 0;
+      for (Op op : mix){
+         LatencyHistogram h = op.latency;
+         System.out.printf("%-10s %8d %10.1f %10.3f %10.3f %10.3f %10.3f %10.3f %8d %10d %14d%n", op.name, h.getCount(),
+            h.getCount() / (elapsedNanos / 1e9), h.getMeanNanos() / 1e6, h.getPercentileNanos(0.50) / 1e6,
+            h.getPercentileNanos(0.90) / 1e6, h.getPercentileNanos(0.99) / 1e6, h.getMaxNanos() / 1e6,
+            op.errors.get(), op.deadlocks.get(), op.serializationFailures.get());
+         ops += h.getCount();
+         errors += op.errors.get();
+      }//end for
+      System.out.printf("%ntotal %d operations in %.1f s, %.1f ops/s, %d errors%n", ops, elapsedNanos / 1e9,
+         ops / (elapsedNanos / 1e9), errors);
+   }//end report
+
+   private void tearDown () {
+      try{
+         // every orderid as one int[] literal
+         StringBuilder ids = new StringBuilder("{");
+         for (int orderid : this._placed)
+            ids.append(ids.length() > 1 ? "," : "").append(orderid);
+         final String idArray = ids.append('}').toString();
+         this._esql.inTransaction(() -> {
+            this._esql.executeUpdate("DELETE FROM ItemStatus WHERE orderid = ANY(?::integer[])", idArray);
+            return this._esql.executeUpdate("DELETE FROM Orders WHERE orderid = ANY(?::integer[])", idArray);
+         });
+         if (!this._managers.isEmpty())
+            this._orders.deleteMenuItem(this._managers.get(0), MENU_ITEM);
+      }catch (SQLException e){
+         System.err.println("could not remove what the load generator added: " + e.getMessage());
+      }//end try
+   }//end tearDown
+
+}//end LoadGenerator
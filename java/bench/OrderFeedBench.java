@@ -0,0 +1,229 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+
+/**
+ * This class compares two ways for staff to learn about new orders while
+ * customers place them at a steady rate: polling, which runs the
+ * ViewCurrentOrder query every cafe.bench.pollMs, and push, which waits
+ * on the OrderEventBus. For each it reports how long it took from
+ * placing an order until the reader saw it, and how many round trips and
+ * rows the reader cost the database.
+ *
+ * Polling gets more expensive as unpaid orders pile up, since every poll
+ * reads all of them again, and it cannot see an order sooner than the
+ * poll interval. Push costs one NOTIFY per change in postgres mode and
+ * nothing in local mode, whatever the number of open orders.
+ *
+ * Properties: cafe.bench.rate (orders per second, 200),
+ * cafe.bench.seconds (per mode, 10), cafe.bench.writers (threads placing
+ * orders, 4), cafe.bench.pollMs (100) and cafe.events (local or
+ * postgres). The pool should allow the writers plus one reader.
+ *
+ * The benchmark places its orders as cafe_bench and deletes them when it
+ * is done.
+ *
+ * Usage: java OrderFeedBench <dbname> <port>
+ */
+public class OrderFeedBench {
+
+   private static final String LOGIN = "cafe_bench";
+   private static final String STAFF = "cafe_bench_staff";
+
+   // what ViewCurrentOrder reads
+   private static final String POLL =
+      "SELECT orderid FROM Orders WHERE paid = 'false' AND timeStampRecieved >= NOW() - '1 day'::INTERVAL";
+
+   // one way of finding new orders, returns the orderids found by one read
+   private interface Reader {
+      List<Integer> read () throws Exception;
+   }//end Reader
+
+   public static void main (String[] args) throws Exception {
+      String url = System.getProperty("cafe.bench.url");
+      if (url == null){
+         if (args.length < 2){
+            System.err.println("Usage: java OrderFeedBench <dbname> <port>  (or -Dcafe.bench.url=<jdbc url>)");
+            return;
+         }//end if
+         url = "jdbc:postgresql://127.0.0.1:" + args[1] + "/" + args[0];
+      }//end if
+      int rate = Integer.getInteger("cafe.bench.rate", 200);
+      int seconds = Integer.getInteger("cafe.bench.seconds", 10);
+      int writers = Integer.getInteger("cafe.bench.writers", 4);
+      final long pollMs = Long.getLong("cafe.bench.pollMs", 100L);
+
+      DataSource dataSource = new DriverManagerDataSource(url);
+      if (System.getProperty("cafe.pool.maxSize") == null)
+         System.setProperty("cafe.pool.maxSize", Integer.toString(writers + 2));
+      final Cafe esql = new Cafe(dataSource);
+      if (esql.getEvents() == null)
+         throw new IllegalStateException("run with cafe.events=local or postgres");
+      try{
+         setUp(esql);
+         final Session customer = esql.getOrders().openSession(LOGIN);
+         final Session staff = esql.getOrders().openSession(STAFF);
+         final String item = esql.getMenu().items().iterator().next().getName();
+
+         System.out.println("url: " + url + "  events: " + System.getProperty("cafe.events", "local"));
+         System.out.printf("rate=%d/s seconds=%d writers=%d pollMs=%d%n%n", rate, seconds, writers, pollMs);
+         System.out.printf("%-8s %8s %8s %10s %10s %10s %10s %12s %10s%n", "mode", "placed", "seen",
+            "p50 ms", "p99 ms", "max ms", "reads", "rows read", "errors");
+
+         run(esql, "poll", customer, item, rate, seconds, writers, new Reader() {
+            public List<Integer> read () throws Exception {
+               Thread.sleep(pollMs);
+               ResultTable t = esql.executeQueryForTable(POLL);
+               List<Integer> ids = new ArrayList<Integer>(t.getRowCount());
+               for (int r = 0; r < t.getRowCount(); ++r)
+                  ids.add(t.getInt(r, 0));
+               return ids;
+            }//end read
+         });
+
+         final long[] after = { esql.getOrders().latestEvent() };
+         run(esql, "push", customer, item, rate, seconds, writers, () -> {
+            List<Integer> ids = new ArrayList<Integer>();
+            for (OrderEvent e : esql.getOrders().waitForEvents(staff, after[0], 1000).getEvents()){
+               if (e.getType() == OrderEvent.Type.PLACED)
+                  ids.add(e.getOrderid());
+               after[0] = e.getSeq();
+            }//end for
+            return ids;
+         });
+      }finally{
+         tearDown(esql);
+         esql.cleanup();
+      }//end try
+   }//end main
+
+   /*
+    * Places orders at the given rate for the given time while the reader
+    * looks for them, then reports how soon each order was seen.
+    */
+   private static void run (final Cafe esql, String mode, final Session customer, final String item,
+                            int rate, int seconds, int writers, final Reader reader) throws Exception {
+      // orderid -> System.nanoTime() before it was placed, and when the
+      // reader first saw it; the reader may see an order before placeOrder
+      // has returned its id, so the two are only matched at the end
+      final ConcurrentHashMap<Integer, Long> placed = new ConcurrentHashMap<Integer, Long>();
+      final ConcurrentHashMap<Integer, Long> firstSeen = new ConcurrentHashMap<Integer, Long>();
+      final AtomicLong errors = new AtomicLong();
+      final AtomicBoolean running = new AtomicBoolean(true);
+      final long[] reads = { 0 };
+      final long[] rows = { 0 };
+      // only read once it is filled, so the writers can share it
+      final OrderCart cart = new OrderCart(esql.getMenu());
+      cart.add(item, 1, "null");
+
+      Thread readerThread = new Thread(() -> {
+         while (running.get()){
+            try{
+               List<Integer> ids = reader.read();
+               long now = System.nanoTime();
+               ++reads[0];
+               rows[0] += ids.size();
+               for (int id : ids)
+                  firstSeen.putIfAbsent(id, now);
+            }catch (InterruptedException e){
+               return;
+            }catch (Exception e){
+               errors.incrementAndGet();
+            }//end try
+         }//end while
+      }, "bench-reader");
+      readerThread.start();
+
+      // each writer keeps its share of the rate on a fixed schedule
+      final long periodNanos = TimeUnit.SECONDS.toNanos(1) * writers / Math.max(1, rate);
+      final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+      List<Thread> writerThreads = new ArrayList<Thread>();
+      for (int w = 0; w < writers; ++w){
+         final long offset = periodNanos * w / writers;
+         Thread t = new Thread(() -> {
+            long next = System.nanoTime() + offset;
+            while (next < end){
+               long wait = next - System.nanoTime();
+               if (wait > 0)
+                  LockSupport.parkNanos(wait);
+               long start = System.nanoTime();
+               try{
+                  int orderid = esql.getOrders().placeOrder(customer, cart);
+                  placed.put(orderid, start);
+               }catch (Exception e){
+                  errors.incrementAndGet();
+               }//end try
+               next += periodNanos;
+            }//end while
+         }, "bench-writer-" + w);
+         writerThreads.add(t);
+         t.start();
+      }//end for
+      for (Thread t : writerThreads)
+         t.join();
+
+      // give the reader time to find the last orders
+      long grace = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+      while (!firstSeen.keySet().containsAll(placed.keySet()) && System.nanoTime() < grace)
+         Thread.sleep(10);
+      running.set(false);
+      readerThread.interrupt();
+      readerThread.join();
+
+      LatencyHistogram seen = new LatencyHistogram();
+      for (Map.Entry<Integer, Long> e : placed.entrySet()){
+         Long when = firstSeen.get(e.getKey());
+         if (when != null)
+            seen.record(when - e.getValue());
+      }//end for
+
+      System.out.printf("%-8s %8d %8d %10.3f %10.3f %10.3f %10d %12d %10d%n", mode, placed.size(), seen.getCount(),
+         seen.getPercentileNanos(0.50) / 1e6, seen.getPercentileNanos(0.99) / 1e6, seen.getMaxNanos() / 1e6,
+         reads[0], rows[0], errors.get());
+
+      // the next mode starts without the open orders of this one
+      esql.executeUpdate("UPDATE Orders SET paid = true, updatedAt = NOW() WHERE login = ?", LOGIN);
+   }//end run
+
+   private static void setUp (Cafe esql) throws SQLException {
+      if (!esql.executeExists("SELECT 1 FROM Users WHERE login = ?", LOGIN))
+         esql.executeUpdate("INSERT INTO Users (login, phoneNum, password, favItems, type) VALUES (?, NULL, ?, '', 'Customer')",
+            LOGIN, LOGIN);
+      if (!esql.executeExists("SELECT 1 FROM Users WHERE login = ?", STAFF))
+         esql.executeUpdate("INSERT INTO Users (login, phoneNum, password, favItems, type) VALUES (?, NULL, ?, '', 'Employee')",
+            STAFF, STAFF);
+      if (esql.getMenu().size() == 0)
+         throw new IllegalStateException("the Menu table is empty, load some menu items first");
+   }//end setUp
+
+   private static void tearDown (Cafe esql) {
+      try{
+         esql.inTransaction(() -> {
+            esql.executeUpdate("DELETE FROM ItemStatus WHERE orderid IN (SELECT orderid FROM Orders WHERE login = ?)", LOGIN);
+            return esql.executeUpdate("DELETE FROM Orders WHERE login = ?", LOGIN);
+         });
+      }catch (SQLException e){
+         System.err.println("could not remove the benchmark orders: " + e.getMessage());
+      }//end try
+   }//end tearDown
+
+}//end OrderFeedBench
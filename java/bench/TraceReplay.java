@@ -0,0 +1,237 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+
+/**
+ * This class replays console sessions recorded with -Dcafe.trace=<dir>
+ * against a database, to reproduce real traffic on a test machine. Every
+ * session runs the unchanged main menu on a thread of its own. The lines
+ * the user typed are handed to it at the times they were typed, and the
+ * sessions start as far apart as they did when they were recorded.
+ *
+ * cafe.replay.speed sets the pace: 1 (the default) replays in real time,
+ * N replays N times faster, and max hands over every line as soon as it
+ * is asked for and starts all sessions at once.
+ *
+ * The report compares, for each menu action, the busy time recorded in
+ * the traces with the busy time of the replay. Busy time leaves out the
+ * time the session waited for input. It also counts the lines the flows
+ * printed as errors, how late lines were handed over when the replay fell
+ * behind, and the sessions whose trace ended before the user exited.
+ *
+ * Sessions are replayed as typed, including orderids and logins. The
+ * replay should run against a copy of the database as it was when the
+ * recording started. Even then, orders may get other ids than they had,
+ * so some status lookups can fail where they did not before. The replay
+ * changes the database the way the recorded sessions did.
+ *
+ * Usage: java TraceReplay <dbname> <port> <trace file or directory>...
+ */
+public class TraceReplay {
+
+   // swallows what the sessions print
+   private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+      public void write (int b) { }
+      public void write (byte[] b, int off, int len) { }
+   });
+
+   // counts the lines the sessions print as errors
+   private static final class LineCounter extends OutputStream {
+      final AtomicLong lines = new AtomicLong();
+      public void write (int b) {
+         if (b == '\n')
+            this.lines.incrementAndGet();
+      }//end write
+   }//end LineCounter
+
+   // thrown to end a session whose trace ran out before the user exited
+   private static final class EndOfTrace extends Error {
+      private static final long serialVersionUID = 1L;
+
+      EndOfTrace () {
+         super(null, null, false, false);
+      }//end EndOfTrace
+   }//end EndOfTrace
+
+   // the lines of one recorded session, handed out at their recorded times
+   private static final class Script extends BufferedReader {
+      private final List<SessionTrace.Record> _inputs = new ArrayList<SessionTrace.Record>();
+      private final long _start;
+      private final double _speed;
+      private final LatencyHistogram _lag;
+      private int _next = 0;
+
+      Script (SessionTrace.Trace trace, long start, double speed, LatencyHistogram lag) {
+         super(Reader.nullReader());
+         for (SessionTrace.Record r : trace.getRecords())
+            if (r.getKind() != SessionTrace.ACTION)
+               this._inputs.add(r);
+         this._start = start;
+         this._speed = speed;
+         this._lag = lag;
+      }//end Script
+
+      public String readLine () {
+         if (this._next == this._inputs.size())
+            throw new EndOfTrace();
+         SessionTrace.Record r = this._inputs.get(this._next++);
+         if (r.getKind() == SessionTrace.END_OF_INPUT)
+            throw new EndOfTrace();
+         if (this._speed > 0){
+            long due = this._start + (long) (r.getOffsetNanos() / this._speed);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0)
+               LockSupport.parkNanos(wait);
+            this._lag.record(-wait);
+         }//end if
+         return r.getText();
+      }//end readLine
+   }//end Script
+
+   public static void main (String[] args) throws Exception {
+      String url = System.getProperty("cafe.bench.url");
+      int first = 0;
+      if (url == null){
+         if (args.length < 3){
+            System.err.println("Usage: java TraceReplay <dbname> <port> <trace file or directory>...");
+            return;
+         }//end if
+         url = "jdbc:postgresql://127.0.0.1:" + args[1] + "/" + args[0];
+         first = 2;
+      }//end if
+      String pace = System.getProperty("cafe.replay.speed", "1");
+      final double speed = "max".equals(pace) ? 0 : Double.parseDouble(pace);
+      if (speed < 0)
+         throw new IllegalArgumentException("cafe.replay.speed must be positive or max");
+
+      final List<SessionTrace.Trace> traces = load(Arrays.copyOfRange(args, first, args.length));
+      if (traces.isEmpty()){
+         System.err.println("no session traces found");
+         return;
+      }//end if
+      long earliest = Long.MAX_VALUE;
+      Map<String, LatencyHistogram> recorded = new TreeMap<String, LatencyHistogram>();
+      for (SessionTrace.Trace trace : traces){
+         earliest = Math.min(earliest, trace.getStartMillis());
+         for (SessionTrace.Record r : trace.getRecords())
+            if (r.getKind() == SessionTrace.ACTION)
+               recorded.computeIfAbsent(r.getText(), n -> new LatencyHistogram()).record(r.getBusyNanos());
+      }//end for
+
+      DataSource dataSource = new DriverManagerDataSource(url);
+      if (System.getProperty("cafe.pool.maxSize") == null)
+         System.setProperty("cafe.pool.maxSize", Integer.toString(Math.min(traces.size(), 64) + 2));
+      final Cafe esql = new Cafe(dataSource);
+      esql.setRenderer(new TableRenderer(DISCARD, 500, Integer.MAX_VALUE, null, false));
+      final Map<String, LatencyHistogram> replayed = new ConcurrentHashMap<String, LatencyHistogram>();
+      final LatencyHistogram lag = new LatencyHistogram();
+      final AtomicLong cut = new AtomicLong();
+      LineCounter errors = new LineCounter();
+
+      System.out.println("url: " + url);
+      System.out.printf("sessions=%d speed=%s%n%n", traces.size(), pace);
+      PrintStream out = System.out;
+      PrintStream err = System.err;
+      Cafe.in = SessionTrace.console();
+      System.setOut(DISCARD);
+      System.setErr(new PrintStream(errors, true));
+      long begin = System.nanoTime();
+      try{
+         List<Thread> threads = new ArrayList<Thread>();
+         for (final SessionTrace.Trace trace : traces){
+            final long start = speed == 0 ? begin
+               : begin + (long) (TimeUnit.MILLISECONDS.toNanos(trace.getStartMillis() - earliest) / speed);
+            Thread t = new Thread(() -> {
+               long wait;
+               while ((wait = start - System.nanoTime()) > 0)
+                  LockSupport.parkNanos(wait);
+               try{
+                  SessionTrace.setCurrent(new SessionTrace(new Script(trace, start, speed, lag), null, replayed));
+                  Cafe.runSession(esql);
+               }catch (EndOfTrace e){
+                  cut.incrementAndGet();
+               }catch (IOException e){
+                  System.err.println(trace.getName() + ": " + e.getMessage());
+               }finally{
+                  SessionTrace.setCurrent(null);
+               }//end try
+            }, "replay-" + trace.getName());
+            threads.add(t);
+            t.start();
+         }//end for
+         for (Thread t : threads)
+            t.join();
+      }finally{
+         System.setOut(out);
+         System.setErr(err);
+         esql.cleanup();
+      }//end try
+      long elapsed = System.nanoTime() - begin;
+
+      report(recorded, replayed);
+      System.out.printf("%nreplayed in %.1f s, %d error line(s), %d session(s) cut short%n", elapsed / 1e9,
+         errors.lines.get(), cut.get());
+      if (speed > 0)
+         System.out.printf("input handed over late: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+            lag.getPercentileNanos(0.50) / 1e6, lag.getPercentileNanos(0.99) / 1e6, lag.getMaxNanos() / 1e6);
+   }//end main
+
+   // the traces named, directories stand for every .trace file in them
+   private static List<SessionTrace.Trace> load (String[] paths) throws IOException {
+      List<SessionTrace.Trace> traces = new ArrayList<SessionTrace.Trace>();
+      for (String path : paths){
+         File file = new File(path);
+         File[] files = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(".trace")) : new File[]{ file };
+         if (files == null)
+            throw new IOException("cannot list " + path);
+         Arrays.sort(files);
+         for (File f : files)
+            traces.add(SessionTrace.read(f));
+      }//end for
+      return traces;
+   }//end load
+
+   private static void report (Map<String, LatencyHistogram> recorded, Map<String, LatencyHistogram> replayed) {
+      System.out.printf("%-24s %24s   %44s%n", "", "recorded", "replayed");
+      System.out.printf("%-24s %8s %7s %7s   %8s %8s %8s %8s %9s%n", "action", "count", "p50 ms", "p99 ms",
+         "count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+      TreeSet<String> actions = new TreeSet<String>(recorded.keySet());
+      actions.addAll(replayed.keySet());
+      LatencyHistogram none = new LatencyHistogram();
+      for (String action : actions){
+         LatencyHistogram a = recorded.getOrDefault(action, none);
+         LatencyHistogram b = replayed.getOrDefault(action, none);
+         System.out.printf("%-24s %8d %7.2f %7.2f   %8d %8.2f %8.2f %8.2f %9.2f%n", action,
+            a.getCount(), a.getPercentileNanos(0.50) / 1e6, a.getPercentileNanos(0.99) / 1e6,
+            b.getCount(), b.getPercentileNanos(0.50) / 1e6, b.getPercentileNanos(0.90) / 1e6,
+            b.getPercentileNanos(0.99) / 1e6, b.getMaxNanos() / 1e6);
+      }//end for
+   }//end report
+
+}//end TraceReplay
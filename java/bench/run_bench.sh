@@ -0,0 +1,16 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the cafe classes together with the benchmarks
+mkdir -p $DIR/../classes
+javac -cp $CLASSPATH -d $DIR/../classes $DIR/../scripts/*.java $DIR/*.java
+
+#run the benchmark named by the first argument
+#Use your database name and port, e.g. ./run_bench.sh ExistsCheckBench
+#JVM options go through JAVA_OPTS, e.g. JAVA_OPTS="-Dcafe.bench.items=5" ./run_bench.sh CafeBench
+BENCH=$1
+shift
+java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH $BENCH mydb $PGPORT "$@"
@@ -0,0 +1,481 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * This class loads the data/*.csv files from the client side through
+ * COPY ... FROM STDIN, so the files do not have to be on the database
+ * host. Each file is read in chunks that are validated and normalised in
+ * parallel; good rows are streamed into COPY in file order and bad rows
+ * go to a reject file with the reason. All tables are loaded in one
+ * transaction and orders_orderid_seq is moved past the loaded orders,
+ * never backwards.
+ *
+ * The loader takes the place of sql/src/load_data.sql and expects empty
+ * tables: rows already in a table make COPY fail on the primary key and
+ * roll the whole load back. Create the database with
+ * sql/scripts/create_db.sh --no-data before running it.
+ *
+ * Usage: java BulkLoader <dbname> <port> [dataDir] [rejectFile]
+ */
+public class BulkLoader {
+
+   // column kinds
+   private static final int TEXT = 0;
+   private static final int INT = 1;
+   private static final int REAL = 2;
+   private static final int BOOL = 3;
+   private static final int TIMESTAMP = 4;
+
+   // lines handed to one validation task
+   private static final int CHUNK_LINES = 8192;
+
+   /*
+    * One column of a table as it appears in the csv file.
+    */
+   private static final class Column {
+      final String name;
+      final int kind;
+      final int maxLength;
+      final boolean notNull;
+      // "Table.column" the value must exist in, or null
+      final String references;
+
+      Column (String name, int kind, int maxLength, boolean notNull, String references) {
+         this.name = name;
+         this.kind = kind;
+         this.maxLength = maxLength;
+         this.notNull = notNull;
+         this.references = references;
+      }//end Column
+   }//end Column
+
+   /*
+    * One table, the file it is loaded from and its unique keys.
+    */
+   private static final class Table {
+      final String name;
+      final String file;
+      final Column[] columns;
+      // column index groups that must be unique, e.g. the primary key
+      final int[][] uniqueKeys;
+
+      Table (String name, String file, Column[] columns, int[][] uniqueKeys) {
+         this.name = name;
+         this.file = file;
+         this.columns = columns;
+         this.uniqueKeys = uniqueKeys;
+      }//end Table
+
+      String copySql () {
+         StringBuilder sb = new StringBuilder("COPY ").append(this.name).append(" (");
+         for (int i = 0; i < this.columns.length; ++i){
+            if (i > 0)
+               sb.append(", ");
+            sb.append(this.columns[i].name);
+         }//end for
+         return sb.append(") FROM STDIN WITH (FORMAT csv, DELIMITER ';')").toString();
+      }//end copySql
+   }//end Table
+
+   /*
+    * The outcome of validating one chunk of lines.
+    */
+   private static final class Chunk {
+      final int firstLine;
+      final String[] raw;
+      // normalised csv line per input line, null when the line was rejected
+      final String[] rows;
+      // values of every unique key group per input line
+      final String[][] keys;
+      final List<String> rejects = new ArrayList<String>();
+
+      Chunk (int firstLine, String[] raw, int uniqueKeys) {
+         this.firstLine = firstLine;
+         this.raw = raw;
+         this.rows = new String[raw.length];
+         this.keys = new String[raw.length][uniqueKeys];
+      }//end Chunk
+   }//end Chunk
+
+   // tables in foreign key order
+   private static final Table[] TABLES = {
+      new Table("Users", "users.csv", new Column[]{
+         new Column("login", TEXT, 50, true, null),
+         new Column("phoneNum", TEXT, 16, false, null),
+         new Column("password", TEXT, 50, true, null),
+         new Column("favItems", TEXT, 400, false, null),
+         new Column("type", TEXT, 8, true, null) },
+         new int[][]{ {0}, {1} }),
+      new Table("Menu", "menu.csv", new Column[]{
+         new Column("itemName", TEXT, 50, true, null),
+         new Column("type", TEXT, 20, true, null),
+         new Column("price", REAL, 0, true, null),
+         new Column("description", TEXT, 400, false, null),
+         new Column("imageURL", TEXT, 256, false, null) },
+         new int[][]{ {0} }),
+      new Table("Orders", "orders.csv", new Column[]{
+         new Column("orderid", INT, 0, true, null),
+         new Column("login", TEXT, 50, false, "Users.login"),
+         new Column("paid", BOOL, 0, false, null),
+         new Column("timeStampRecieved", TIMESTAMP, 0, true, null),
+         new Column("total", REAL, 0, true, null) },
+         new int[][]{ {0} }),
+      new Table("ItemStatus", "itemStatus.csv", new Column[]{
+         new Column("orderid", INT, 0, true, "Orders.orderid"),
+         new Column("itemName", TEXT, 50, true, "Menu.itemName"),
+         new Column("amount", INT, 0, false, null),
+         new Column("lastUpdated", TIMESTAMP, 0, true, null),
+         new Column("status", TEXT, 20, false, null),
+         new Column("comments", TEXT, 130, false, null) },
+         new int[][]{ {0, 1} })
+   };
+
+   private final Cafe _esql;
+   private final File _dataDir;
+   private final PrintWriter _rejects;
+   private final ExecutorService _workers;
+   private final int _parallelism;
+
+   public BulkLoader (Cafe esql, File dataDir, PrintWriter rejects, int parallelism) {
+      this._esql = esql;
+      this._dataDir = dataDir;
+      this._rejects = rejects;
+      this._parallelism = Math.max(1, parallelism);
+      this._workers = Executors.newFixedThreadPool(this._parallelism);
+   }//end BulkLoader
+
+   public static void main (String[] args) {
+      if (args.length < 2) {
+         System.err.println (
+            "Usage: java [-classpath <classpath>] BulkLoader <dbname> <port> [dataDir] [rejectFile]");
+         return;
+      }//end if
+      File dataDir = new File(args.length > 2 ? args[2] : "data");
+      File rejectFile = new File(args.length > 3 ? args[3] : "rejects.txt");
+      Cafe esql = null;
+      PrintWriter rejects = null;
+      BulkLoader loader = null;
+      try{
+         Class.forName ("org.postgresql.Driver");
+         esql = new Cafe (args[0], args[1]);
+         rejects = new PrintWriter(new OutputStreamWriter(
+            new FileOutputStream(rejectFile), StandardCharsets.UTF_8));
+         loader = new BulkLoader(esql, dataDir, rejects,
+            Integer.getInteger("cafe.load.threads", Runtime.getRuntime().availableProcessors()));
+         loader.loadAll();
+         System.out.println("Rejected rows are listed in " + rejectFile.getPath());
+      }catch(Exception e){
+         System.err.println ("Bulk load failed, nothing was loaded: " + e.getMessage ());
+      }finally{
+         if (loader != null)
+            loader.shutdown();
+         if (rejects != null)
+            rejects.close();
+         if (esql != null)
+            esql.cleanup();
+      }//end try
+   }//end main
+
+   /**
+    * Method to load every table whose csv file exists in the data
+    * directory, all in one transaction.
+    *
+    * @throws java.sql.SQLException when COPY fails, nothing is loaded then
+    * @throws java.io.IOException when a file cannot be read
+    */
+   public void loadAll () throws SQLException, IOException {
+      PooledConnection pc = this._esql.getPool().borrow();
+      try{
+         Connection conn = pc.getConnection();
+         conn.setAutoCommit(false);
+         CopyManager copy = conn.unwrap(PGConnection.class).getCopyAPI();
+         long start = System.nanoTime();
+         long total = 0;
+         for (Table table : TABLES){
+            File file = new File(this._dataDir, table.file);
+            if (!file.isFile()){
+               System.out.println(table.name + ": " + file.getPath() + " not found, skipped");
+               continue;
+            }//end if
+            total += load(conn, copy, table, file);
+         }//end for
+         // new orders must not collide with the loaded ids, and the
+         // sequence never goes back, e.g. from where load_data.sql put it
+         Statement stmt = conn.createStatement();
+         try{
+            stmt.execute("SELECT setval('orders_orderid_seq', GREATEST(COALESCE(MAX(orderid), 0) + 1, "
+               + "(SELECT CASE WHEN is_called THEN last_value + 1 ELSE last_value END FROM orders_orderid_seq)), false) "
+               + "FROM Orders");
+         }finally{
+            stmt.close();
+         }//end try
+         conn.commit();
+         double seconds = (System.nanoTime() - start) / 1e9;
+         System.out.printf("Loaded %d row(s) in %.2f s (%.0f rows/s)%n", total, seconds,
+            seconds > 0 ? total / seconds : 0.0);
+      }finally{
+         this._esql.getPool().release(pc);
+      }//end try
+   }//end loadAll
+
+   public void shutdown () {
+      this._workers.shutdownNow();
+   }//end shutdown
+
+   /*
+    * Streams one file into COPY and returns the number of rows loaded.
+    */
+   private long load (Connection conn, CopyManager copy, Table table, File file)
+         throws SQLException, IOException {
+      long start = System.nanoTime();
+      final List<Set<String>> parents = parentKeys(conn, table);
+
+      List<Set<String>> seen = new ArrayList<Set<String>>();
+      for (int i = 0; i < table.uniqueKeys.length; ++i)
+         seen.add(new HashSet<String>());
+
+      long[] counts = new long[2]; // loaded, rejected
+      ArrayDeque<Future<Chunk>> inflight = new ArrayDeque<Future<Chunk>>();
+      CopyIn in = copy.copyIn(table.copySql());
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+               new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)){
+         int lineNo = 0;
+         while (true){
+            List<String> lines = new ArrayList<String>(CHUNK_LINES);
+            String line;
+            while (lines.size() < CHUNK_LINES && (line = reader.readLine()) != null)
+               lines.add(line);
+            if (lines.isEmpty())
+               break;
+            final int firstLine = lineNo + 1;
+            lineNo += lines.size();
+            final String[] raw = lines.toArray(new String[0]);
+            inflight.addLast(this._workers.submit(() -> validate(table, parents, firstLine, raw)));
+            // keep a bounded number of chunks in memory
+            if (inflight.size() >= 2 * this._parallelism)
+               write(in, table, file, seen, await(inflight.pollFirst()), counts);
+         }//end while
+         while (!inflight.isEmpty())
+            write(in, table, file, seen, await(inflight.pollFirst()), counts);
+         in.endCopy();
+      }catch (SQLException | IOException | RuntimeException e){
+         for (Future<Chunk> f : inflight)
+            f.cancel(true);
+         if (in.isActive())
+            in.cancelCopy();
+         throw e;
+      }//end try
+
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("%-10s %8d row(s) loaded, %6d rejected in %.2f s (%.0f rows/s)%n",
+         table.name, counts[0], counts[1], seconds, seconds > 0 ? counts[0] / seconds : 0.0);
+      return counts[0];
+   }//end load
+
+   /*
+    * Reads the keys of every table this table references, per column.
+    * Rows copied earlier in the same transaction are visible here.
+    */
+   private static List<Set<String>> parentKeys (Connection conn, Table table) throws SQLException {
+      List<Set<String>> parents = new ArrayList<Set<String>>();
+      for (Column c : table.columns){
+         if (c.references == null){
+            parents.add(null);
+            continue;
+         }//end if
+         String[] ref = c.references.split("\\.");
+         Set<String> keys = new HashSet<String>();
+         Statement stmt = conn.createStatement();
+         try{
+            ResultSet rs = stmt.executeQuery("SELECT " + ref[1] + " FROM " + ref[0]);
+            while (rs.next())
+               keys.add(rs.getString(1).stripTrailing());
+         }finally{
+            stmt.close();
+         }//end try
+         parents.add(keys);
+      }//end for
+      return parents;
+   }//end parentKeys
+
+   /*
+    * Validates and normalises one chunk, runs on a worker thread.
+    */
+   private static Chunk validate (Table table, List<Set<String>> parents, int firstLine, String[] raw) {
+      Chunk chunk = new Chunk(firstLine, raw, table.uniqueKeys.length);
+      int numCol = table.columns.length;
+      StringBuilder sb = new StringBuilder(256);
+      String[] values = new String[numCol];
+      for (int r = 0; r < raw.length; ++r){
+         String line = raw[r];
+         // users.csv has DOS line endings
+         if (line.endsWith("\r"))
+            line = line.substring(0, line.length() - 1);
+         if (line.trim().isEmpty())
+            continue;
+         String[] fields = line.split(";", -1);
+         if (fields.length != numCol){
+            chunk.rejects.add(reject(firstLine + r, "expected " + numCol + " fields but found " + fields.length, raw[r]));
+            continue;
+         }//end if
+
+         String error = null;
+         for (int c = 0; c < numCol && error == null; ++c){
+            Column col = table.columns[c];
+            String value = fields[c].trim();
+            if (value.isEmpty()){
+               if (col.notNull)
+                  error = col.name + " is empty";
+               // empty text stays an empty string, other empty values are NULL
+               values[c] = col.kind == TEXT ? "" : null;
+               continue;
+            }//end if
+            try{
+               switch (col.kind){
+                  case TEXT:
+                     if (value.length() > col.maxLength)
+                        error = col.name + " is longer than " + col.maxLength;
+                     break;
+                  case INT:
+                     value = Integer.toString(Integer.parseInt(value));
+                     break;
+                  case REAL:
+                     double d = Double.parseDouble(value);
+                     if (Double.isNaN(d) || Double.isInfinite(d) || d < 0)
+                        error = col.name + " is not a valid amount";
+                     break;
+                  case BOOL:
+                     value = parseBoolean(value);
+                     if (value == null)
+                        error = col.name + " is not a boolean";
+                     break;
+                  case TIMESTAMP:
+                     value = Timestamp.valueOf(value).toString();
+                     break;
+               }//end switch
+            }catch (IllegalArgumentException e){
+               error = col.name + " is not a valid " + (col.kind == TIMESTAMP ? "timestamp" : "number");
+            }//end try
+            if (error == null && parents.get(c) != null && !parents.get(c).contains(value))
+               error = col.name + " '" + value + "' does not exist in " + col.references;
+            values[c] = value;
+         }//end for
+         if (error != null){
+            chunk.rejects.add(reject(firstLine + r, error, raw[r]));
+            continue;
+         }//end if
+
+         sb.setLength(0);
+         for (int c = 0; c < numCol; ++c){
+            if (c > 0)
+               sb.append(';');
+            if (values[c] != null)
+               sb.append('"').append(values[c].replace("\"", "\"\"")).append('"');
+         }//end for
+         chunk.rows[r] = sb.append('\n').toString();
+         for (int k = 0; k < table.uniqueKeys.length; ++k){
+            int[] group = table.uniqueKeys[k];
+            String key = values[group[0]];
+            for (int g = 1; g < group.length; ++g)
+               key += '\u0000' + values[group[g]];
+            chunk.keys[r][k] = key;
+         }//end for
+      }//end for
+      return chunk;
+   }//end validate
+
+   /*
+    * Drops rows that repeat a unique key seen earlier in the file, sends
+    * the rest to COPY and logs the rejects. Runs on the loading thread in
+    * file order.
+    */
+   private void write (CopyIn in, Table table, File file, List<Set<String>> seen, Chunk chunk,
+                       long[] counts) throws SQLException {
+      StringBuilder sb = new StringBuilder(chunk.rows.length * 64);
+      for (int r = 0; r < chunk.rows.length; ++r){
+         if (chunk.rows[r] == null)
+            continue;
+         String duplicate = null;
+         for (int k = 0; k < seen.size() && duplicate == null; ++k)
+            if (seen.get(k).contains(chunk.keys[r][k]))
+               duplicate = "duplicate " + table.columns[table.uniqueKeys[k][0]].name;
+         if (duplicate != null){
+            chunk.rejects.add(reject(chunk.firstLine + r, duplicate, chunk.raw[r]));
+            continue;
+         }//end if
+         for (int k = 0; k < seen.size(); ++k)
+            seen.get(k).add(chunk.keys[r][k]);
+         sb.append(chunk.rows[r]);
+         ++counts[0];
+      }//end for
+      byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+      if (bytes.length > 0)
+         in.writeToCopy(bytes, 0, bytes.length);
+      for (String reject : chunk.rejects)
+         this._rejects.println(file.getName() + ":" + reject);
+      counts[1] += chunk.rejects.size();
+   }//end write
+
+   private static Chunk await (Future<Chunk> future) throws IOException {
+      try{
+         return future.get();
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while validating rows", e);
+      }catch (ExecutionException e){
+         throw new IOException("Validation failed: " + e.getCause(), e.getCause());
+      }//end try
+   }//end await
+
+   private static String reject (int lineNo, String reason, String raw) {
+      return lineNo + ": " + reason + ": " + raw.replace("\r", "");
+   }//end reject
+
+   private static String parseBoolean (String value) {
+      switch (value.toLowerCase()){
+         case "t": case "true": case "y": case "yes": case "1":
+            return "true";
+         case "f": case "false": case "n": case "no": case "0":
+            return "false";
+         default:
+            return null;
+      }//end switch
+   }//end parseBoolean
+
+}//end BulkLoader
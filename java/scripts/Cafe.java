@@ -14,6 +14,7 @@
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -26,6 +27,8 @@ import java.io.InputStreamReader;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.*;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
 /**
  * This class defines a simple embedded SQL utility class that is designed to
  * work with PostgreSQL JDBC drivers.
@@ -33,11 +36,41 @@ import java.util.*;
  */
 public class Cafe {
 
-   //login info for later use
-   private static String authorisedUser = null;
+   // query of getCurrSeqVal
+   private static final String CURRVAL = "Select currval(?::regclass)";
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // logged for batches instead of every row's values
+   private static final Object[] NO_PARAMS = {};
+
+   //login info for later use, per thread so that replayed sessions can run side by side
+   private static final ThreadLocal<String> authorisedUser = new ThreadLocal<String>();
+
+   //session of authorisedUser, opened on first use
+   private static final ThreadLocal<Session> authorisedSession = new ThreadLocal<Session>();
+
+   // pool of physical database connections shared by every session.
+   private ConnectionPool _pool = null;
+
+   // in memory copy of the Menu table, shared by every session.
+   private MenuCache _menu = null;
+
+   // open orders and their items, null when the board is turned off.
+   private KitchenBoard _board = null;
+
+   // changes to orders for the staff order feed, null when cafe.events is off.
+   private OrderEventBus _events = null;
+
+   // latency histograms and slow-query log of every statement and operation.
+   private CafeMetrics _metrics = null;
+
+   // business logic shared by the console and any other front end.
+   private OrderService _orders = null;
+
+   // renders the result of executeQueryAndPrintResult.
+   private ResultRenderer _renderer = null;
+
+   // connection pinned to the current thread while a transaction runs.
+   private final ThreadLocal<PooledConnection> _pinned = new ThreadLocal<PooledConnection>();
 
    // handling the keyboard inputs through a BufferedReader
    // This variable can be global for convenience.
@@ -47,8 +80,15 @@ public class Cafe {
    /**
     * Creates a new instance of Cafe
     *
-    * @param hostname the MySQL or PostgreSQL server hostname
-    * @param database the name of the database
+    * The pool is sized through the system properties cafe.pool.minSize,
+    * cafe.pool.maxSize, cafe.pool.borrowTimeoutMs, cafe.pool.idleTimeoutMs,
+    * cafe.pool.validationIntervalMs and cafe.pool.statementCacheSize.
+    * Printed results are fetched cafe.render.fetchSize rows at a time
+    * and laid out in pages of cafe.render.pageSize rows, pausing between
+    * pages when cafe.render.pause is set.
+    *
+    * @param dbname the name of the database
+    * @param dbport the port the PostgreSQL server listens on
     * @throws java.sql.SQLException when failed to make a connection.
     */
    public Cafe (String dbname, String dbport) throws SQLException {
@@ -59,8 +99,7 @@ public class Cafe {
          String url = "jdbc:postgresql://127.0.0.1:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url);
+         open(new DriverManagerDataSource(url));
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -69,66 +108,250 @@ public class Cafe {
       }//end catch
    }//end Cafe
 
+   /**
+    * Creates a new instance of Cafe on top of an existing DataSource, for
+    * example a local test database or an embedded stand-in. Pool and
+    * renderer are configured through the same system properties as the
+    * (dbname, dbport) constructor.
+    *
+    * @param dataSource where the pool opens its physical connections
+    * @throws java.sql.SQLException when the pool or the menu cannot be loaded
+    */
+   public Cafe (DataSource dataSource) throws SQLException {
+      open(dataSource);
+   }//end Cafe
+
+   /*
+    * Opens the connection pool, the renderer and the menu cache.
+    */
+   private void open (DataSource dataSource) throws SQLException {
+      this._metrics = CafeMetrics.fromSystemProperties();
+
+      // open the connection pool
+      this._pool = new ConnectionPool(dataSource,
+         Integer.getInteger("cafe.pool.minSize", 1),
+         Integer.getInteger("cafe.pool.maxSize", 8),
+         Long.getLong("cafe.pool.borrowTimeoutMs", 5000L),
+         Long.getLong("cafe.pool.idleTimeoutMs", 300000L),
+         Long.getLong("cafe.pool.validationIntervalMs", 30000L),
+         Integer.getInteger("cafe.pool.statementCacheSize", 64));
+
+      // printed results are streamed through a buffered table renderer
+      this._renderer = new TableRenderer(System.out,
+         Integer.getInteger("cafe.render.fetchSize", 500),
+         Integer.getInteger("cafe.render.pageSize", 50),
+         Boolean.getBoolean("cafe.render.pause") ? () -> in : null,
+         !"false".equals(System.getProperty("cafe.render.stats")));
+
+      // load the menu once, orders are validated and priced from it
+      this._menu = new MenuCache(this);
+      this._menu.reload();
+
+      // load the open orders, status lookups are answered from them. The
+      // board only sees other processes' writes through the postgres
+      // event bus, so without cafe.kitchenBoard it is on only in that mode
+      String board = System.getProperty("cafe.kitchenBoard");
+      if (board == null ? "postgres".equals(System.getProperty("cafe.events")) : Boolean.parseBoolean(board)){
+         this._board = new KitchenBoard(this);
+         this._board.reload();
+      }//end if
+
+      this._events = OrderEventBus.fromSystemProperties(this, this._board);
+      this._orders = new OrderService(this);
+   }//end open
+
+   /**
+    * @return the connection pool backing this instance
+    */
+   public ConnectionPool getPool () {
+      return this._pool;
+   }//end getPool
+
+   /**
+    * Method to replace the renderer used by executeQueryAndPrintResult.
+    *
+    * @param renderer the new renderer
+    */
+   public void setRenderer (ResultRenderer renderer) {
+      this._renderer = renderer;
+   }//end setRenderer
+
+   public ResultRenderer getRenderer () {
+      return this._renderer;
+   }//end getRenderer
+
+   /**
+    * @return the in memory menu, kept in sync by UpdateMenu
+    */
+   public MenuCache getMenu () {
+      return this._menu;
+   }//end getMenu
+
+   /**
+    * @return the board of open orders, or null when it is turned off
+    */
+   public KitchenBoard getBoard () {
+      return this._board;
+   }//end getBoard
+
+   /**
+    * @return the bus order changes are published on, or null when it is
+    *         turned off
+    */
+   public OrderEventBus getEvents () {
+      return this._events;
+   }//end getEvents
+
+   /**
+    * @return the statement and operation latencies of this instance
+    */
+   public CafeMetrics getMetrics () {
+      return this._metrics;
+   }//end getMetrics
+
+   /**
+    * @return the thread safe service the console flows are built on
+    */
+   public OrderService getOrders () {
+      return this._orders;
+   }//end getOrders
+
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
     *
+    * The statement is prepared once per connection and reused from the
+    * statement cache, values are bound to its ? placeholders in order.
+    *
     * @param sql the input SQL string
+    * @param params the values bound to the ? placeholders
+    * @return the number of rows affected
     * @throws java.sql.SQLException when update failed
     */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      PooledConnection pc = acquire ();
+      SqlRoundTripEvent event = new SqlRoundTripEvent ();
+      event.begin ();
+      long start = System.nanoTime ();
+      int rows = -1;
+      try{
+         // fetches the cached statement and binds the parameters
+         PreparedStatement stmt = prepare (pc, sql, params);
 
-      // close the instruction
-      stmt.close ();
+         // issues the update instruction
+         rows = stmt.executeUpdate ();
+         return rows;
+      }finally{
+         this._metrics.recordStatement (sql, start, params);
+         SqlRoundTripEvent.end (event, sql, params, rows, null);
+         release (pc);
+      }//end try
    }//end executeUpdate
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and outputs the results to
-    * standard out.
+    * standard out through the current ResultRenderer.
     *
     * @param query the input query string
+    * @param params the values bound to the ? placeholders
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-	 if(outputHeader){
-	    for(int i = 1; i <= numCol; i++){
-		System.out.print(rsmd.getColumnName(i) + "\t");
-	    }
-	    System.out.println();
-	    outputHeader = false;
-	 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close ();
-      return rowCount;
-   }//end executeQuery
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      return executeQueryAndRender (this._renderer, query, params);
+   }//end executeQueryAndPrintResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * stream its rows into the given renderer. The PostgreSQL driver only
+    * fetches with a cursor inside a transaction, so the query runs in one
+    * whenever the renderer asks for a fetch size. A renderer that pauses
+    * for the user between pages gets every row read first instead, so it
+    * never waits with a connection or a transaction open.
+    *
+    * @param renderer where the rows are written
+    * @param query the input query string
+    * @param params the values bound to the ? placeholders
+    * @return the number of rows rendered
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndRender (final ResultRenderer renderer, final String query,
+                                     final Object... params) throws SQLException {
+      if (renderer.isPaging ())
+         return renderBuffered (renderer, query, params);
+      if (renderer.getFetchSize () <= 0)
+         return render (renderer, query, params);
+      return inTransaction (() -> render (renderer, query, params));
+   }//end executeQueryAndRender
+
+   private int render (ResultRenderer renderer, String query, Object[] params) throws SQLException {
+      PooledConnection pc = acquire ();
+      try{
+         PreparedStatement stmt = prepare (pc, query, params);
+         stmt.setFetchSize (renderer.getFetchSize ());
+         // issues the query instruction, timed up to the first fetch so
+         // the time spent paging through the output is not counted
+         ResultSet rs;
+         SqlRoundTripEvent event = new SqlRoundTripEvent ();
+         event.begin ();
+         long start = System.nanoTime ();
+         try{
+            rs = stmt.executeQuery ();
+         }finally{
+            this._metrics.recordStatement (query, start, params);
+         }//end try
+         int rows = -1;
+         try{
+            rows = renderer.render (rs);
+            return rows;
+         }finally{
+            SqlRoundTripEvent.end (event, query, params, rows, null);
+            rs.close ();
+            // the statement is cached, leave it with the default fetch size
+            stmt.setFetchSize (0);
+         }//end try
+      }finally{
+         release (pc);
+      }//end try
+   }//end render
+
+   /*
+    * Reads every row, blank padding stripped like the renderer does, and
+    * gives the connection back before the renderer sees the first one.
+    */
+   private int renderBuffered (ResultRenderer renderer, String query, Object[] params) throws SQLException {
+      String[] header = null;
+      List<String[]> rows = new ArrayList<String[]> ();
+      PooledConnection pc = acquire ();
+      SqlRoundTripEvent event = new SqlRoundTripEvent ();
+      event.begin ();
+      long start = System.nanoTime ();
+      try{
+         ResultSet rs = prepare (pc, query, params).executeQuery ();
+         try{
+            ResultSetMetaData rsmd = rs.getMetaData ();
+            header = new String[rsmd.getColumnCount ()];
+            for (int i = 0; i < header.length; ++i)
+               header[i] = rsmd.getColumnLabel (i + 1);
+            while (rs.next ()){
+               String[] row = new String[header.length];
+               for (int i = 0; i < header.length; ++i){
+                  String value = rs.getString (i + 1);
+                  row[i] = value == null ? null : value.stripTrailing ();
+               }//end for
+               rows.add (row);
+            }//end while
+         }finally{
+            rs.close ();
+         }//end try
+      }finally{
+         this._metrics.recordStatement (query, start, params);
+         SqlRoundTripEvent.end (event, query, params, header == null ? -1 : rows.size (), null);
+         release (pc);
+      }//end try
+      return renderer.render (header, rows);
+   }//end renderBuffered
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
@@ -136,91 +359,333 @@ public class Cafe {
     * a list of records. Each record in turn is a list of attribute values
     *
     * @param query the input query string
+    * @param params the values bound to the ? placeholders
     * @return the query result as a list of records
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-      // creates a statement object 
-      Statement stmt = this._connection.createStatement (); 
- 
-      // issues the query instruction 
-      ResultSet rs = stmt.executeQuery (query); 
- 
-      /* 
-       ** obtains the metadata object for the returned result set.  The metadata 
-       ** contains row and column info. 
-       */ 
-      ResultSetMetaData rsmd = rs.getMetaData (); 
-      int numCol = rsmd.getColumnCount (); 
-      int rowCount = 0; 
- 
-      // iterates through the result set and saves the data returned by the query. 
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>(); 
-      while (rs.next()){
-          List<String> record = new ArrayList<String>(); 
-         for (int i=1; i<=numCol; ++i) 
-            record.add(rs.getString (i)); 
-         result.add(record); 
-      }//end while 
-      stmt.close (); 
-      return result; 
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException { 
+      PooledConnection pc = acquire ();
+      SqlRoundTripEvent event = new SqlRoundTripEvent ();
+      event.begin ();
+      long start = System.nanoTime ();
+      List<List<String>> result = null;
+      try{
+         // issues the query instruction 
+         ResultSet rs = prepare (pc, query, params).executeQuery (); 
+
+         /* 
+          ** obtains the metadata object for the returned result set.  The metadata 
+          ** contains row and column info. 
+          */ 
+         ResultSetMetaData rsmd = rs.getMetaData (); 
+         int numCol = rsmd.getColumnCount (); 
+
+         // iterates through the result set and saves the data returned by the query. 
+         result  = new ArrayList<List<String>>(); 
+         while (rs.next()){
+            List<String> record = new ArrayList<String>(numCol); 
+            for (int i=1; i<=numCol; ++i) 
+               record.add(rs.getString (i)); 
+            result.add(record); 
+         }//end while 
+         rs.close (); 
+         return result; 
+      }finally{
+         this._metrics.recordStatement (query, start, params);
+         SqlRoundTripEvent.end (event, query, params, result == null ? -1 : result.size (), result);
+         release (pc);
+      }//end try
    }//end executeQueryAndReturnResult
 
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results column
+    * by column, with numeric and boolean columns kept as primitives.
+    *
+    * @param query the input query string
+    * @param params the values bound to the ? placeholders
+    * @return the query result as a typed table
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ResultTable executeQueryForTable (String query, Object... params) throws SQLException {
+      PooledConnection pc = acquire ();
+      SqlRoundTripEvent event = new SqlRoundTripEvent ();
+      event.begin ();
+      long start = System.nanoTime ();
+      ResultTable result = null;
+      try{
+         ResultSet rs = prepare (pc, query, params).executeQuery ();
+         try{
+            result = ResultTable.read (rs);
+            return result;
+         }finally{
+            rs.close ();
+         }//end try
+      }finally{
+         this._metrics.recordStatement (query, start, params);
+         SqlRoundTripEvent.end (event, query, params, result == null ? -1 : result.getRowCount (), result);
+         release (pc);
+      }//end try
+   }//end executeQueryForTable
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and turns every row into an
+    * object with the given mapper.
+    *
+    * @param query the input query string
+    * @param mapper called once per row
+    * @param params the values bound to the ? placeholders
+    * @return the mapped rows in result order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public <T> List<T> executeQueryAndMap (String query, RowMapper<T> mapper, Object... params) throws SQLException {
+      PooledConnection pc = acquire ();
+      SqlRoundTripEvent event = new SqlRoundTripEvent ();
+      event.begin ();
+      long start = System.nanoTime ();
+      int rows = -1;
+      try{
+         ResultSet rs = prepare (pc, query, params).executeQuery ();
+         try{
+            List<T> result = new ArrayList<T>();
+            while (rs.next())
+               result.add(mapper.map(rs));
+            rows = result.size ();
+            return result;
+         }finally{
+            rs.close ();
+         }//end try
+      }finally{
+         this._metrics.recordStatement (query, start, params);
+         SqlRoundTripEvent.end (event, query, params, rows, null);
+         release (pc);
+      }//end try
+   }//end executeQueryAndMap
+
+   /**
+    * Method to test whether a query has any result.  The query is wrapped
+    * in SELECT EXISTS(...), so the DBMS stops at the first matching row
+    * and sends back a single boolean instead of whole rows.
+    *
+    * @param query the input query string, its select list is ignored
+    * @param params the values bound to the ? placeholders
+    * @return true when the query returns at least one row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public boolean executeExists (String query, Object... params) throws SQLException {
+      ResultTable result = executeQueryForTable ("SELECT EXISTS(" + query + ")", params);
+      return result.getBoolean (0, 0);
+   }//end executeExists
+
+   /**
+    * Method to count the results of a query on the DBMS side, only the
+    * count is sent back.
+    *
+    * @param query the input query string
+    * @param params the values bound to the ? placeholders
+    * @return the number of rows the query returns
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public long executeCount (String query, Object... params) throws SQLException {
+      ResultTable result = executeQueryForTable ("SELECT count(*) FROM (" + query + ") AS q", params);
+      return result.getLong (0, 0);
+   }//end executeCount
+
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the number of results
     *
     * @param query the input query string
+    * @param params the values bound to the ? placeholders
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
+   public int executeQuery (String query, Object... params) throws SQLException {
+       PooledConnection pc = acquire ();
+       SqlRoundTripEvent event = new SqlRoundTripEvent ();
+       event.begin ();
+       long start = System.nanoTime ();
+       int rowCount = -1;
+       try{
+          // issues the query instruction
+          ResultSet rs = prepare (pc, query, params).executeQuery ();
 
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+          rowCount = 0;
 
-       int rowCount = 0;
+          // iterates through the result set and count nuber of results.
+          if(rs.next()){
+             rowCount++;
+          }//end while
+          rs.close ();
+          return rowCount;
+       }finally{
+          this._metrics.recordStatement (query, start, params);
+          SqlRoundTripEvent.end (event, query, params, rowCount, null);
+          release (pc);
+       }//end try
+   }//end executeQuery
 
-       // iterates through the result set and count nuber of results.
-       if(rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
-   }
+   /**
+    * Method to execute one update SQL statement for many sets of values.
+    * All rows are sent to the DBMS as a single JDBC batch.
+    *
+    * @param sql the input SQL string
+    * @param rows the values bound to the ? placeholders, one array per row
+    * @return the number of rows affected by each set of values
+    * @throws java.sql.SQLException when update failed
+    */
+   public int[] executeBatch (String sql, List<Object[]> rows) throws SQLException {
+      PooledConnection pc = acquire ();
+      SqlRoundTripEvent event = new SqlRoundTripEvent ();
+      event.begin ();
+      long start = System.nanoTime ();
+      long affected = -1;
+      PreparedStatement stmt = null;
+      try{
+         stmt = pc.getStatementCache ().prepare (sql);
+         for (Object[] row : rows){
+            for (int i = 0; i < row.length; ++i)
+               stmt.setObject (i + 1, row[i]);
+            stmt.addBatch ();
+         }//end for
+         int[] counts = stmt.executeBatch ();
+         affected = 0;
+         for (int c : counts)
+            affected += Math.max (0, c);
+         return counts;
+      }finally{
+         // a batch cut short must not be sent by the next call on this
+         // cached statement
+         if (stmt != null){
+            try{
+               stmt.clearBatch ();
+            }catch (SQLException e){
+               // the statement is unusable, so there is nothing left to send
+            }//end try
+         }//end if
+         this._metrics.recordStatement (sql, start, NO_PARAMS);
+         SqlRoundTripEvent.end (event, sql, NO_PARAMS, affected, null);
+         release (pc);
+      }//end try
+   }//end executeBatch
+
+   /**
+    * A unit of work run by inTransaction().
+    */
+   public interface Transaction<T> {
+      T run () throws SQLException;
+   }//end Transaction
+
+   /**
+    * Method to run several statements as one transaction. Every execute*
+    * call made by the work on this thread goes to the same connection,
+    * which is committed when the work returns and rolled back when it
+    * throws. A transaction started inside another one joins it.
+    *
+    * @param work the statements to run
+    * @return what the work returned
+    * @throws java.sql.SQLException when a statement or the commit failed
+    */
+   public <T> T inTransaction (Transaction<T> work) throws SQLException {
+      if (this._pinned.get () != null)
+         return work.run ();
+
+      PooledConnection pc = this._pool.borrow ();
+      Connection conn = pc.getConnection ();
+      this._pinned.set (pc);
+      try{
+         conn.setAutoCommit (false);
+         T result = work.run ();
+         conn.commit ();
+         return result;
+      }catch (SQLException | RuntimeException e){
+         try{
+            conn.rollback ();
+         }catch (SQLException ignored){
+            // the pool discards the connection if it is broken.
+         }//end try
+         throw e;
+      }finally{
+         this._pinned.remove ();
+         this._pool.release (pc);
+      }//end try
+   }//end inTransaction
+
+   /*
+    * Returns the connection pinned by inTransaction() or borrows one.
+    */
+   private PooledConnection acquire () throws SQLException {
+      PooledConnection pc = this._pinned.get ();
+      return pc != null ? pc : this._pool.borrow ();
+   }//end acquire
+
+   /*
+    * Gives a connection back unless it belongs to a running transaction.
+    */
+   private void release (PooledConnection pc) {
+      if (pc != this._pinned.get ())
+         this._pool.release (pc);
+   }//end release
+
+   /*
+    * Fetches the statement for sql from the connection's statement cache
+    * and binds params to its placeholders. The statement stays owned by
+    * the cache and must not be closed.
+    */
+   private static PreparedStatement prepare (PooledConnection pc, String sql, Object[] params) throws SQLException {
+      PreparedStatement stmt = pc.getStatementCache ().prepare (sql);
+      for (int i = 0; i < params.length; ++i)
+         stmt.setObject (i + 1, params[i]);
+      return stmt;
+   }//end prepare
 
    /**
     * Method to fetch the last value from sequence. This
     * method issues the query to the DBMS and returns the current 
     * value of sequence used for autogenerated keys
     *
+    * currval() is local to a database session, so with pooled connections
+    * the value is only defined when this is called inside the same
+    * inTransaction() as the insert that advanced the sequence.
+    *
     * @param sequence name of the DB sequence
     * @return current value of a sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
-	
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
-	return -1;
+	PooledConnection pc = acquire ();
+	Object[] params = { sequence };
+	SqlRoundTripEvent event = new SqlRoundTripEvent ();
+	event.begin ();
+	long start = System.nanoTime ();
+	try{
+		ResultSet rs = prepare (pc, CURRVAL, params).executeQuery ();
+		try{
+			if (rs.next())
+				return rs.getInt(1);
+			return -1;
+		}finally{
+			rs.close ();
+		}
+	}finally{
+		this._metrics.recordStatement (CURRVAL, start, params);
+		SqlRoundTripEvent.end (event, CURRVAL, params, 1, null);
+		release (pc);
+	}
    }
 
    /**
-    * Method to close the physical connection if it is open.
+    * Method to close the pooled connections if they are open and stop
+    * listening for order events.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      if (this._events != null){
+         this._events.close ();
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -240,6 +705,7 @@ public class Cafe {
 
       Greeting();
       Cafe esql = null;
+      SessionTrace trace = null;
       try{
          // use postgres JDBC driver.
          Class.forName ("org.postgresql.Driver").newInstance ();
@@ -249,6 +715,39 @@ public class Cafe {
          String dbport = args[1];
          esql = new Cafe (dbname, dbport);
 
+         // with cafe.trace set, the session is recorded to a file in that directory
+         String traceDir = System.getProperty("cafe.trace");
+         if (traceDir != null){
+            trace = SessionTrace.record(in, new File(traceDir));
+            SessionTrace.setCurrent(trace);
+            in = SessionTrace.console();
+         }//end if
+         runSession(esql);
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+      }finally{
+         // make sure to cleanup the created table and close the connection.
+         try{
+            if(trace != null) {
+               trace.close ();
+            }//end if
+            if(esql != null) {
+               System.out.print("Disconnecting from database...");
+               esql.cleanup ();
+               System.out.println("Done\n\nBye !");
+            }//end if
+         }catch (Exception e) {
+            // ignored.
+         }//end try
+      }//end try
+   }//end main
+
+   /*
+    * Runs the main menu until the user exits, reading from Cafe.in. Also
+    * used by TraceReplay to run recorded sessions on several threads.
+    **/
+   static void runSession(Cafe esql) {
+      try{
          boolean keepon = true;
          while(keepon) {
             // These are sample SQL statements
@@ -257,14 +756,15 @@ public class Cafe {
             System.out.println("1. Create user");
             System.out.println("2. Log in");
             System.out.println("9. < EXIT");
-            authorisedUser = null;
+            authorisedUser.remove();
+            authorisedSession.remove();
             switch (readChoice()){
-               case 1: CreateUser(esql); break;
-               case 2: authorisedUser = LogIn(esql); break;
+               case 1: dispatch("CreateUser", esql, Cafe::CreateUser); break;
+               case 2: traced("LogIn", () -> authorisedUser.set(LogIn(esql))); break;
                case 9: keepon = false; break;
                default : System.out.println("Unrecognized choice!"); break;
             }//end switch
-            if (authorisedUser != null) {
+            if (authorisedUser.get() != null) {
               boolean usermenu = true;
               String user_type = find_type(esql);
 	      switch (user_type){
@@ -282,13 +782,13 @@ public class Cafe {
                     System.out.println(".........................");
                     System.out.println("9. Log out");
                       switch (readChoice()){
-                       case 1: BrowseMenuName(esql); break;
-                       case 2: BrowseMenuType(esql); break;
-                       case 3: AddOrder(esql); break;
-                       case 4: UpdateOrder(esql); break;
-                       case 5: ViewOrderHistory(esql); break;
-                       case 6: ViewOrderStatus(esql); break;
-                       case 7: UpdateUserInfo(esql); break;
+                       case 1: dispatch("BrowseMenuName", esql, Cafe::BrowseMenuName); break;
+                       case 2: dispatch("BrowseMenuType", esql, Cafe::BrowseMenuType); break;
+                       case 3: dispatch("AddOrder", esql, Cafe::AddOrder); break;
+                       case 4: dispatch("UpdateOrder", esql, Cafe::UpdateOrder); break;
+                       case 5: dispatch("ViewOrderHistory", esql, Cafe::ViewOrderHistory); break;
+                       case 6: dispatch("ViewOrderStatus", esql, Cafe::ViewOrderStatus); break;
+                       case 7: dispatch("UpdateUserInfo", esql, Cafe::UpdateUserInfo); break;
                        case 9: usermenu = false; break;
                        default : System.out.println("Unrecognized choice!"); break;
 		      }//end switch
@@ -304,21 +804,25 @@ public class Cafe {
                     System.out.println("5. View Current Orders");
                     System.out.println("6. View Order Status");
                     System.out.println("7. Update User Info");
+                    System.out.println("8. Kitchen Batch Update");
+                    System.out.println("10. Order Feed");
                     System.out.println(".........................");
                     System.out.println("9. Log out");
                       switch (readChoice()){
-                       case 1: BrowseMenuName(esql); break;
-                       case 2: BrowseMenuType(esql); break;
-                       case 3: AddOrder(esql); break;
-                       case 4: EmployeeUpdateOrder(esql); break;
-                       case 5: ViewCurrentOrder(esql); break;
-                       case 6: ViewOrderStatus(esql); break;
-                       case 7: UpdateUserInfo(esql); break;
+                       case 1: dispatch("BrowseMenuName", esql, Cafe::BrowseMenuName); break;
+                       case 2: dispatch("BrowseMenuType", esql, Cafe::BrowseMenuType); break;
+                       case 3: dispatch("AddOrder", esql, Cafe::AddOrder); break;
+                       case 4: dispatch("EmployeeUpdateOrder", esql, Cafe::EmployeeUpdateOrder); break;
+                       case 5: dispatch("ViewCurrentOrder", esql, Cafe::ViewCurrentOrder); break;
+                       case 6: dispatch("ViewOrderStatus", esql, Cafe::ViewOrderStatus); break;
+                       case 7: dispatch("UpdateUserInfo", esql, Cafe::UpdateUserInfo); break;
+                       case 8: dispatch("KitchenBatchUpdate", esql, Cafe::KitchenBatchUpdate); break;
+                       case 10: OrderFeed(esql); break;
                        case 9: usermenu = false; break;
                        default : System.out.println("Unrecognized choice!"); break;
 		      }//end switch
 		  } break;
-		case "Manager ": 
+		case "Manager": 
 		  while(usermenu) {
                     System.out.println("Manager-MAIN MENU");
                     System.out.println("---------");
@@ -330,17 +834,23 @@ public class Cafe {
                     System.out.println("6. View Order Status");
                     System.out.println("7. Update User Info");
                     System.out.println("8. Update Menu");
+                    System.out.println("10. Performance Stats");
+                    System.out.println("11. Kitchen Batch Update");
+                    System.out.println("12. Order Feed");
                     System.out.println(".........................");
                     System.out.println("9. Log out");
                       switch (readChoice()){
-                       case 1: BrowseMenuName(esql); break;
-                       case 2: BrowseMenuType(esql); break;
-                       case 3: AddOrder(esql); break;
-                       case 4: EmployeeUpdateOrder(esql); break;
-                       case 5: ViewCurrentOrder(esql); break;
-                       case 6: ViewOrderStatus(esql); break;
-                       case 7: ManagerUpdateUserInfo(esql); break;
-                       case 8: UpdateMenu(esql); break;
+                       case 1: dispatch("BrowseMenuName", esql, Cafe::BrowseMenuName); break;
+                       case 2: dispatch("BrowseMenuType", esql, Cafe::BrowseMenuType); break;
+                       case 3: dispatch("AddOrder", esql, Cafe::AddOrder); break;
+                       case 4: dispatch("EmployeeUpdateOrder", esql, Cafe::EmployeeUpdateOrder); break;
+                       case 5: dispatch("ViewCurrentOrder", esql, Cafe::ViewCurrentOrder); break;
+                       case 6: dispatch("ViewOrderStatus", esql, Cafe::ViewOrderStatus); break;
+                       case 7: dispatch("ManagerUpdateUserInfo", esql, Cafe::ManagerUpdateUserInfo); break;
+                       case 8: dispatch("UpdateMenu", esql, Cafe::UpdateMenu); break;
+                       case 10: PerformanceStats(esql); break;
+                       case 11: dispatch("KitchenBatchUpdate", esql, Cafe::KitchenBatchUpdate); break;
+                       case 12: OrderFeed(esql); break;
 		       case 9: usermenu = false;break;
                        default : System.out.println("Unrecognized choice!"); break;
 		      }//end switch
@@ -348,21 +858,11 @@ public class Cafe {
 	      }//end switch
             }//end if
          }//end while
-      }catch(Exception e) {
-         System.err.println (e.getMessage ());
       }finally{
-         // make sure to cleanup the created table and close the connection.
-         try{
-            if(esql != null) {
-               System.out.print("Disconnecting from database...");
-               esql.cleanup ();
-               System.out.println("Done\n\nBye !");
-            }//end if
-         }catch (Exception e) {
-            // ignored.
-         }//end try
+         authorisedUser.remove();
+         authorisedSession.remove();
       }//end try
-   }//end main
+   }//end runSession
 
    public static void Greeting(){
       System.out.println(
@@ -371,6 +871,61 @@ public class Cafe {
          "*******************************************************\n");
    }//end Greeting
 
+   /*
+    * Sets the user the console flows act for, as LogIn does from main.
+    * Used by the benchmarks to drive the flows without the main menu.
+    **/
+   static void setAuthorisedUser(String login) {
+      authorisedUser.set(login);
+      authorisedSession.remove();
+   }//end setAuthorisedUser
+
+   /*
+    * Runs one menu action, recorded as a CafeOperationEvent so that
+    * flight recordings show which action caused each SQL round trip
+    **/
+   private static void dispatch(String action, Cafe esql, Consumer<Cafe> flow) {
+      CafeOperationEvent event = CafeOperationEvent.start(action, authorisedUser.get());
+      try{
+         traced(action, () -> flow.accept(esql));
+      }finally{
+         CafeOperationEvent.finish(event);
+      }//end try
+   }//end dispatch
+
+   /*
+    * Runs one menu action and notes how long it kept the program busy in
+    * the session trace of this thread, if there is one
+    **/
+   private static void traced(String action, Runnable flow) {
+      SessionTrace trace = SessionTrace.current();
+      if (trace == null){
+         flow.run();
+         return;
+      }//end if
+      long start = System.nanoTime();
+      long waited = trace.waited();
+      try{
+         flow.run();
+      }finally{
+         trace.action(action, start, waited);
+      }//end try
+   }//end traced
+
+   /*
+    * Returns the OrderService session of authorisedUser
+    **/
+   private static Session session(Cafe esql) throws SQLException {
+      Session s = authorisedSession.get();
+      if (s == null || !s.getLogin().equals(authorisedUser.get())){
+         s = esql.getOrders().openSession(authorisedUser.get());
+         if (s == null)
+            throw new SQLException("Unknown user " + authorisedUser.get());
+         authorisedSession.set(s);
+      }//end if
+      return s;
+   }//end session
+
    /*
     * Reads the users choice given from the keyboard
     * @int
@@ -391,6 +946,18 @@ public class Cafe {
       return input;
    }//end readChoice
 
+   /*
+    * Parses an id the user typed in
+    * @return the id, or -1 when the input is not a number
+    **/
+   public static int parseId(String input) {
+      try {
+         return Integer.parseInt(input.trim());
+      }catch (Exception e) {
+         return -1;
+      }//end try
+   }//end parseId
+
    /*
     * Creates a new user with privided login, passowrd and phoneNum
     **/
@@ -427,12 +994,7 @@ public class Cafe {
 		if (phone.isEmpty() || phone.trim().isEmpty()){
 			phone = "";
 		}
-	 String type="Customer";
-	 String favItems="";
-
-	 String query = String.format("INSERT INTO USERS (phoneNum, login, password, favItems, type) VALUES ('%s','%s','%s','%s','%s')", phone, login, password, favItems, type);
-
-         esql.executeUpdate(query);
+         esql.getOrders().createUser(login, password, phone);
          System.out.println ("User successfully created!");
       }catch(Exception e){
          System.err.println (e.getMessage ());
@@ -440,33 +1002,39 @@ public class Cafe {
    }//end
    
    /*
-    * Check log in credentials for an existing user
+    * Check log in credentials for an existing user and opens the session
+    * the menus work with
     * @return User login or null is the user does not exist
     **/
    public static String LogIn(Cafe esql){
+      CafeOperationEvent event = CafeOperationEvent.start("LogIn", null);
       try{
          System.out.print("\tEnter user login: ");
          String login = in.readLine();
          System.out.print("\tEnter user password: ");
          String password = in.readLine();
 
-         String query = String.format("SELECT * FROM Users WHERE login = '%s' AND password = '%s'", login, password);
-         int userNum = esql.executeQuery(query);
-	 if (userNum > 0)
-		return login;
-         return null;
+         // one round trip checks the password and reads type and favItems
+         Session session = esql.getOrders().logIn(login, password);
+         if (session == null)
+            return null;
+         authorisedSession.set(session);
+         return session.getLogin();
       }catch(Exception e){
          System.err.println (e.getMessage ());
          return null;
+      }finally{
+         CafeOperationEvent.finish(event);
       }
    }//end
 
+   /*
+    * Returns the trimmed type of authorisedUser, from the session opened
+    * at log in, so no query is needed
+    **/
    public static String find_type(Cafe esql){
       try{
-		String query = String.format("SELECT Type FROM Users WHERE login = '%s'", authorisedUser);
-		List <List<String>> Result = esql.executeQueryAndReturnResult(query);
-		String Resultstring = (Result.get(0)).get(0);
-		return Resultstring;
+		return session(esql).getType();
 	}catch(Exception e){
 		System.err.println (e.getMessage ());
 		return null;
@@ -479,12 +1047,7 @@ public class Cafe {
 		System.out.print("\tEnter Search name: ");
 		String searchword = in.readLine();
 	
-		String query = String.format("SELECT * FROM Menu M WHERE M.ItemName LIKE '");
-		query += "%";
-		query += searchword;
-		query += "%'";
-	//	System.out.println(query);
-		int rowcount = esql.executeQueryAndPrintResult(query);
+		int rowcount = esql.getOrders().browseMenuByName(searchword, esql.getRenderer());
 		System.out.println("Total Row(s): " + rowcount);
 		return;
 	}catch(Exception e){
@@ -499,12 +1062,7 @@ public class Cafe {
 		System.out.print("\tEnter Search type: ");
 		String searchword = in.readLine();
 	
-		String query = String.format("SELECT * FROM Menu M WHERE M.Type LIKE '");
-		query += "%";
-		query += searchword;
-		query += "%'";
-	//	System.out.println(query);
-		int rowcount = esql.executeQueryAndPrintResult(query);
+		int rowcount = esql.getOrders().browseMenuByType(searchword, esql.getRenderer());
 		System.out.println("Total Row(s): " + rowcount);
 		return;
 	}catch(Exception e){
@@ -515,20 +1073,16 @@ public class Cafe {
 
    public static Integer AddOrder(Cafe esql){
      try{
-		List<Double> Total_amount = new ArrayList<Double>();
 		int order_repeat = 0; //counter for repeating order	
 		String order = "";
 		int rowcount_find = 0;
-		Map<String, Integer> itemANDamount = new HashMap<String, Integer>();
-		Map<String, String> itemANDcomment = new HashMap<String, String>();
-		Set<String>all_order = new HashSet<String>();
+		OrderCart cart = new OrderCart(esql.getMenu());
 		do{
 			//check if the item user wants to order is valid
 			do{
 				System.out.print("\tEnter the name of the item: ");
 				order = in.readLine();
-				String query_findname = String.format("SELECT * FROM Menu M WHERE M.ItemName = '%s'", order);
-				rowcount_find = esql.executeQuery(query_findname);
+				rowcount_find = esql.getMenu().get(order) == null ? 0 : 1;
 			if (rowcount_find == 0){
 				System.out.println("\tSorry, we can't match the name of the item that you want to buy");
 				order_repeat = 1;
@@ -548,36 +1102,13 @@ public class Cafe {
 					System.out.println("\tSorry, we do not accept negative number here, please re-enter a 0 or positive number");					
 					order_repeat = 1;//ask for re-ordering
 					}
-				else if (amount_order >= 1){ //if the user enters in a valid number, store the order(s) price in the list
-				
-					int temp_ao = amount_order; //store the amount order the number would be lost
-					if (itemANDamount.containsKey(order)){
-						itemANDamount.put(order,itemANDamount.get(order) + temp_ao);
-						}
-					else{
-						itemANDamount.put(order,temp_ao);
-						}
-					
-					while(amount_order != 0){
-						String find_price_query = String.format("SELECT M.price FROM Menu M WHERE M.ItemName = '%s'", order);
-						List <List<String>> each_price  = esql.executeQueryAndReturnResult(find_price_query);	
-						String Resultstring = (each_price.get(0)).get(0);
-						Double resultprice = Double.parseDouble(Resultstring);
-						Total_amount.add(resultprice);
-						amount_order--;
-							}
+				else if (amount_order >= 1){ //if the user enters in a valid number, add it to the item's line in the cart
 						order_repeat = 0;
 
 						System.out.print("\tHave any comment on this item?(type 'null' if you have no comment): ");
 						String comment = in.readLine();
-						
-						if (itemANDcomment.containsKey(order)){
-							itemANDcomment.put(order,itemANDcomment.get(order) + "\\" + comment);
-						}
-						else{
-							itemANDcomment.put(order,comment);
-						}//if the item name exist, then comment can just be added after the first comment with '\\' serve as seperator.
-						all_order.add(order);	
+						//the cart adds up the amount and prices it, a later comment on the same item goes after the first one with '\\' as seperator.
+						cart.add(order, amount_order, comment);
 					}	
 					else if (amount_order == 0){// if the use enters in 0, cancel the order (which means do nothing)
 						System.out.println("Order Cancelled");
@@ -607,35 +1138,12 @@ public class Cafe {
 				}while(prompt_r == 1);
 		}while(order_repeat == 1);//Check if user wants to keep ordering, if yes, continue, if no, jump out
 			
-		Double final_total = 0.0;
-		if (Total_amount.isEmpty()){
+		if (cart.isEmpty()){
 			return 0;
 		}
-		else{
-			for(Double d:Total_amount)
-				final_total += d;
-			}//Sum the prices of each order  in the list
- 		//System.out.println(final_total); TEST CORRECTNESS, Good
- 		
-		// now that we get the total amount of the price, we can insert the query
-
-		String query = String.format("INSERT INTO Orders (login, paid, timeStampRecieved, total) VALUES ('%s', false, NOW(), '%s')", authorisedUser,final_total);
-		//System.out.println(query);
-		esql.executeUpdate(query);
+		// the service writes the order and its items in one transaction
+		Integer orderid = esql.getOrders().placeOrder(session(esql), cart);
 		System.out.println("Order has been successfully created.");
-		
-		String select_query = String.format("SELECT orderid, timeStampRecieved FROM Orders O WHERE O.timeStampRecieved = (SELECT MAX(O2.timeStampRecieved) FROM Orders O2 WHERE O2.login = '%s')",authorisedUser); 
-      		//System.out.println(select_query);
-		List <List<String>> Result_id  = esql.executeQueryAndReturnResult(select_query);	
-		String Resultstring_id = (Result_id.get(0)).get(0);
-		Integer orderid = Integer.parseInt(Resultstring_id);
-		String timeRecieved = (Result_id.get(0)).get(1);
-		Timestamp s = Timestamp.valueOf(timeRecieved);
-		for (Iterator<String> it = all_order.iterator(); it.hasNext();){
-			String a = it.next();
-			String item_status_query = String.format("INSERT INTO ItemStatus (orderid, itemName, amount,lastUpdated, status, comments) VALUES ('%s', '%s', '%s', '%s', 'Has Not Started', '%s')" ,orderid, a,itemANDamount.get(a), s,itemANDcomment.get(a));
-			esql.executeUpdate(item_status_query);
-		}
 		System.out.println("Orderid is " + orderid);
 		return orderid;
 	}catch(Exception e){
@@ -645,42 +1153,34 @@ public class Cafe {
    }//end 
 
    public static void UpdateOrder(Cafe esql){
-	List<List<String>> result_storage  = new ArrayList<List<String>>(); 
 	try{//check user type to see what he/she can update
 		int repeat_prompt = 0; //counter to repeat the prompt
 		do{
 			System.out.print("\tEnter in the order ID: ");
-			String orderid = in.readLine();
-			String match_query = String.format("SELECT paid FROM Orders O WHERE O.login = '%s' AND O.orderid = '%s'",authorisedUser, orderid);//use "select paid" becasue so that we can reuse this string
-			int rowcount = esql.executeQuery(match_query);
+			int orderid = parseId(in.readLine());
+			OrderService.OrderState state = esql.getOrders().getOwnOrderState(session(esql), orderid);
 			//check if the orderid he enters is made under his name
-			if (rowcount == 0){//orderid cant be find under user's name	
+			if (state == OrderService.OrderState.MISSING){//orderid cant be find under user's name	
 				System.out.println("Sorry, we cannot find your order, please re-enter the orderid.");
 				repeat_prompt = 1;
 			}
 			else {//orderid found, then check if the order has been paid.
-				result_storage = esql.executeQueryAndReturnResult(match_query);
-				String paidornot = (result_storage.get(0)).get(0);
-				if (paidornot.equals("true")){
+				if (state == OrderService.OrderState.PAID){
 					System.out.println("Sorry, this order can't be change because it has been paid.");
 					repeat_prompt = 1;
 				}//if it is paid, reprompt the user to enter in new orderid.
 				else{
 					repeat_prompt = 0;
-					List<Double> Total_amount = new ArrayList<Double>();
 					int order_repeat = 0; //counter for repeating order	
 					String order = "";
 					int rowcount_find = 0;
-					Map<String, Integer> itemANDamount = new HashMap<String, Integer>();
-					Map<String, String> itemANDcomment = new HashMap<String, String>();
-					Set<String>all_order = new HashSet<String>();
+					OrderCart cart = new OrderCart(esql.getMenu());
 					do{
 						//check if the item user wants to order is valid
 						do{
 							System.out.print("\tEnter the name of the item: ");
 							order = in.readLine();
-							String query_findname = String.format("SELECT * FROM Menu M WHERE M.ItemName = '%s'", order);
-							rowcount_find = esql.executeQuery(query_findname);
+							rowcount_find = esql.getMenu().get(order) == null ? 0 : 1;
 						if (rowcount_find == 0){
 							System.out.println("\tSorry, we can't match the name of the item that you want to buy");
 							order_repeat = 1;
@@ -697,67 +1197,13 @@ public class Cafe {
 							String Str_amount_order = in.readLine();
 							int amount_order = Integer.parseInt(Str_amount_order); //changing the string to integer.			
 							
-							if (amount_order < 0){
-								int temp_ao = amount_order;
-								if (itemANDamount.containsKey(order)){
-									itemANDamount.put(order,itemANDamount.get(order) + temp_ao);
-								}
-								else{ 
-									itemANDamount.put(order,temp_ao);
-								}
-								
-								while(amount_order != 0){
-									String find_price_query = String.format("SELECT M.price FROM Menu M WHERE M.ItemName = '%s'", order);
-									List <List<String>> each_price  = esql.executeQueryAndReturnResult(find_price_query);	
-									String Resultstring = (each_price.get(0)).get(0);
-									Double resultprice = Double.parseDouble(Resultstring);
-									resultprice = resultprice * -1;
-									Total_amount.add(resultprice);
-									amount_order++;
-										}
-									order_repeat = 0;
-
-									System.out.print("\tHave any comment on this item?(type 'null' if you have no comment): ");
-									String comment = in.readLine();
-									
-									if (itemANDcomment.containsKey(order)){
-										itemANDcomment.put(order,itemANDcomment.get(order) + "\\" + comment);
-									}
-									else{
-										itemANDcomment.put(order,comment);
-									}//if the item name exist, then comment can just be added after the first comment with '\\' serve as seperator.
-									all_order.add(order);	
-								}	
-							else if (amount_order >= 1){ //if the user enters in a valid number, store the order(s) price in the list
-							
-								int temp_ao = amount_order; //store the amount order the number would be lost
-								if (itemANDamount.containsKey(order)){
-									itemANDamount.put(order,itemANDamount.get(order) + temp_ao);
-									}
-								else{
-									itemANDamount.put(order,temp_ao);
-									}
-								
-								while(amount_order != 0){
-									String find_price_query = String.format("SELECT M.price FROM Menu M WHERE M.ItemName = '%s'", order);
-									List <List<String>> each_price  = esql.executeQueryAndReturnResult(find_price_query);	
-									String Resultstring = (each_price.get(0)).get(0);
-									Double resultprice = Double.parseDouble(Resultstring);
-									Total_amount.add(resultprice);
-									amount_order--;
-										}
+							if (amount_order != 0){ //a negative number lowers the amount of the item, a positive one raises it
 									order_repeat = 0;
 
 									System.out.print("\tHave any comment on this item?(type 'null' if you have no comment): ");
 									String comment = in.readLine();
-									
-									if (itemANDcomment.containsKey(order)){
-										itemANDcomment.put(order,itemANDcomment.get(order) + "\\" + comment);
-									}
-									else{
-										itemANDcomment.put(order,comment);
-									}//if the item name exist, then comment can just be added after the first comment with '\\' serve as seperator.
-									all_order.add(order);	
+									//the cart adds up the changes, a later comment on the same item goes after the first one with '\\' as seperator.
+									cart.add(order, amount_order, comment);
 								}	
 								else if (amount_order == 0){// if the use enters in 0, cancel the order (which means do nothing)
 									System.out.println("Update Cancelled");
@@ -785,41 +1231,19 @@ public class Cafe {
 								}
 							}while(prompt_r == 1);
 					}while(order_repeat == 1);//Check if user wants to keep ordering, if yes, continue, if no, jump out
-					Double update_total = 0.0;
-					if (Total_amount.isEmpty()){
+					if (cart.isEmpty()){
+						return;
+					}
+					// the service moves the total and the items in one transaction
+					state = esql.getOrders().updateOrder(session(esql), orderid, cart);
+					if (state == OrderService.OrderState.PAID){
+						System.out.println("Sorry, this order can't be change because it has been paid.");
 						return;
 					}
-					else{
-						for(Double d:Total_amount)
-							update_total += d;
-						}//Sum the prices of each order  in the list that need to update to order
-					//System.out.println(final_total); TEST CORRECTNESS, Good
-					
-					// now that we get the total amount of the price, we can insert the query
-
-					String query = String.format("UPDATE Orders SET total = total+'%s' WHERE orderid = '%s'",update_total, orderid);
-					//System.out.println(query);
-					esql.executeUpdate(query);
 					System.out.println("Order has been successfully updated.");
-					
-					for (Iterator<String> it = all_order.iterator(); it.hasNext();){
-						String a = it.next();
-						String test = String.format("SELECT * FROM ItemStatus I WHERE I.orderid = '%s' AND itemName = '%s'", orderid, a);
-						int test_rownum = esql.executeQuery(test);
-						if (test_rownum == 0){
-						String item_status_query = String.format("INSERT INTO ItemStatus (orderid, itemName, amount,lastUpdated, status, comments) VALUES ('%s', '%s', '%s', NOW(), 'Has Not Started', '%s')" ,orderid, a,itemANDamount.get(a), itemANDcomment.get(a));
-						esql.executeUpdate(item_status_query);
-						}
-						else{
-						String item_status_query = String.format("UPDATE ItemStatus SET amount = amount+'%s', lastUpdated = NOW(), comments = '%s' WHERE orderid = '%s' AND itemName = '%s'", itemANDamount.get(a), itemANDcomment.get(a), orderid,a); 
-						esql.executeUpdate(item_status_query);
-						}
-					} 
 				}
 			}
 		}while(repeat_prompt == 1);
-	String delete_query = String.format("DELETE * FROM ItemStatus WHERE amount =< 0");
-	//delete ItemStatus that has the amount of 0 or negative
 	}catch(Exception e){
 		System.err.println (e.getMessage ());
 		return;
@@ -827,10 +1251,8 @@ public class Cafe {
    }//end
 
    public static void EmployeeUpdateOrder(Cafe esql){
-	List<List<String>> result_storage  = new ArrayList<List<String>>(); 
 	try{//check user type to see what he/she can update
 		int repeat_prompt = 0; //counter to repeat the prompt
-		String status_change = "";
 		System.out.print("\tDo you want to update your own order or someone else's (1=yourself,2=others)?  ");
 		String choice_1 = in.readLine();
 		if (choice_1.equals("1")){
@@ -838,20 +1260,21 @@ public class Cafe {
 			return;
 		}
 		else if(choice_1.equals("2")){
+		Session session = session(esql);
 		do{
 			System.out.print("\tEnter in the order ID: ");
-			String orderid = in.readLine();
-			String match_query = String.format("SELECT paid FROM Orders O WHERE O.login = '%s' AND O.orderid = '%s'",authorisedUser, orderid);//use "select paid" becasue so that we can reuse this string
-			int rowcount = esql.executeQuery(match_query);
-			//check if the orderid he enters is made under his name
-			if (rowcount == 0){//orderid cant be find under user's name	
-				System.out.println("Sorry, we cannot find your order, please re-enter the orderid.");
+			int orderid = parseId(in.readLine());
+			OrderService.OrderState state = esql.getOrders().getOrderState(session, orderid);
+			if (state == OrderService.OrderState.MISSING){
+				System.out.println("Sorry, we cannot find the order, please re-enter the orderid.");
 				repeat_prompt = 1;
 			}
 			else{
-				result_storage = esql.executeQueryAndReturnResult(match_query);
-				String paidornot = (result_storage.get(0)).get(0);
-				if (paidornot.equals("false")){
+				repeat_prompt = 0;
+				if (state == OrderService.OrderState.OPEN){
+					//the version is read before the order is shown, so a payment never covers more than was shown
+					int version = esql.getOrders().getOrderVersion(session, orderid);
+					esql.getOrders().viewOrderStatus(session, orderid, esql.getRenderer());
 					int prompt_r = 0;
 
 					do{
@@ -859,8 +1282,12 @@ public class Cafe {
 					System.out.print("\tThis order has not been paid yet, would you want to change it to paid?(y/n) ");
 					String paid_change = in.readLine();
 					if(paid_change.equals("y")){
-						paid_change = String.format("UPDATE Orders SET paid = 'true' WHERE orderid = '%s'",orderid);	
-						esql.executeUpdate(paid_change);
+						if (esql.getOrders().markPaid(session, orderid, version) == OrderService.OrderState.CHANGED){
+							System.out.println("The order has been changed in the meantime, this is how it is now:");
+							version = esql.getOrders().getOrderVersion(session, orderid);
+							esql.getOrders().viewOrderStatus(session, orderid, esql.getRenderer());
+							prompt_r = 1;
+						}
 						}
 					else if (paid_change.equals("n")){
 						return;
@@ -871,57 +1298,53 @@ public class Cafe {
 					}
 					}while(prompt_r == 1);
 				}	
-				String Select_query = String.format("SELECT * FROM ItemStatus I WHERE I.orderid = '%s'", orderid);
-				rowcount = esql.executeQueryAndPrintResult(Select_query); 
-				System.out.println("\tWhich item do you want to update? ");
-				String choice = in.readLine();
-				Select_query = String.format("Select status FROM ItemStatus I WHERE I.orderid = '%s' AND I.itemName = '%s'",orderid, choice);
-				result_storage = esql.executeQueryAndReturnResult(Select_query);
-				String status =  (result_storage.get(0)).get(0);
-				if (status.equals("Has Not Started")){
-					System.out.print("\tIt has not started yet, want to change it to Started?(y/n) ");
-					choice = in.readLine();
-					int prompt_r = 0;
-
-					do{
-					prompt_r = 0;
-					if (choice.equals("y")){
-						status_change = String.format("UPDATE itemStatus SET status = 'Started' WHERE orderid = '%s' AND itemName = '%s'", orderid, choice);
-						esql.executeUpdate(status_change);
-					}
-					else if (choice.equals("n")){
-						return;
-					}
-					else{
+				else{//a paid order has not been shown yet
+					esql.getOrders().viewOrderStatus(session, orderid, esql.getRenderer());
+				}
+				System.out.println("\tWhich item do you want to update (* for the whole order)? ");
+				String itemName = in.readLine();
+				if (itemName.trim().equals("*")){
+					System.out.print("\tStart or finish every item (s/f)? ");
+					String choice = in.readLine();
+					if (choice.equals("s"))
+						System.out.println(esql.getOrders().startOrders(session, orderid) + " item(s) started.");
+					else if (choice.equals("f"))
+						System.out.println(esql.getOrders().finishOrders(session, orderid) + " item(s) finished.");
+					else
 						System.out.println("Unrecgonized Choice!!");
-						prompt_r = 1;
-					}
-					}while(prompt_r == 1);
+					return;
 				}
-				else if (status.equals("Started")){
-					System.out.print("\tIt has started, want to Change it to Finished?(y/n) ");
-					choice = in.readLine();
-					int prompt_r = 0;
-
-					do{
-					prompt_r = 0;
-					if (choice.equals("y")){
-						status_change = String.format("UPDATE itemStatus SET status = 'Finished' WHERE orderid = '%s' AND itemName = '%s'", orderid, choice);
-						esql.executeUpdate(status_change);
-					}
-					else if (choice.equals("n")){
-						return;
-					}
-					else{
-					System.out.println("Unrecgonized choice");
-					prompt_r = 1;
-					}
-					}while(prompt_r == 1);
+				OrderService.ItemVersion item = esql.getOrders().getItemVersion(session, orderid, itemName);
+				String next = item == null ? null : OrderService.nextStatus(item.getStatus());
+				if (item == null){
+					System.out.println("Sorry, we cannot find that item on the order.");
+					return;
 				}
-				else if (status.equals("Finished")){
+				else if (next == null){
 					System.out.println("This order has been finished, you cannot change it anymore");
 					return;
 				}
+				int prompt_r = 0;
+
+				do{
+				prompt_r = 0;
+				if (next.equals("Started"))
+					System.out.print("\tIt has not started yet, want to change it to Started?(y/n) ");
+				else
+					System.out.print("\tIt has started, want to Change it to Finished?(y/n) ");
+				String choice = in.readLine();
+				if (choice.equals("y")){
+					if (esql.getOrders().advanceItemStatus(session, orderid, itemName, item) == null)
+						System.out.println("Sorry, someone else changed this item in the meantime.");
+				}
+				else if (choice.equals("n")){
+					return;
+				}
+				else{
+					System.out.println("Unrecgonized Choice!!");
+					prompt_r = 1;
+				}
+				}while(prompt_r == 1);
 			}
 		}while(repeat_prompt == 1);
 		}
@@ -935,9 +1358,7 @@ public class Cafe {
 
    public static void ViewOrderHistory(Cafe esql){
 	try{
-		List<List<String>> result_storage = new ArrayList<List<String>>();
-		String Select_query = String.format("SELECT orderid FROM Orders WHERE login = '%s' ORDER BY timeStampRecieved DESC LIMIT 5", authorisedUser);
-		int rowcount = esql.executeQueryAndPrintResult(Select_query);
+		int rowcount = esql.getOrders().viewOrderHistory(session(esql), esql.getRenderer());
 		System.out.println("Total row(s): " + rowcount);
 		return;
 	}
@@ -950,7 +1371,6 @@ public class Cafe {
 
    public static void UpdateUserInfo(Cafe esql){
       	try{
-		String update_query = "";
 		System.out.println("\tWhat do you want to update?");
 		System.out.println("\t1.password");
 		System.out.println("\t2.phone number");
@@ -974,26 +1394,17 @@ public class Cafe {
 					prompt_r = 0;
 				}
 			}while(prompt_r ==1);
-				update_query = String.format("UPDATE Users SET password = '%s' WHERE login = '%s'",np,authorisedUser);
-				esql.executeUpdate(update_query);
+				esql.getOrders().updatePassword(session(esql), np);
 		}
 		else if (input == 2){
 			System.out.print("\tEnter the new phone number: ");
 			nnum = in.readLine();
-				if (nnum.isEmpty() || nnum.trim().isEmpty()){
-					nnum = "";
-				}
-			update_query = String.format("UPDATE Users SET phoneNum = '%s' WHERE login = '%s'",nnum,authorisedUser);
-			esql.executeUpdate(update_query);
+			esql.getOrders().updatePhone(session(esql), nnum);
 		}
 		else if (input == 3){
 			System.out.print("\tEnter your favorite item: ");
 			 nf = in.readLine();
-				if (nf.isEmpty()|| nf.trim().isEmpty()){
-					nf ="";
-				}
-			update_query = String.format("UPDATE Users SET favItems = favItems ||' / '||'%s' WHERE login = '%s'",nf,authorisedUser);
-			esql.executeUpdate(update_query);
+			esql.getOrders().addFavoriteItem(session(esql), nf);
 		}
 		else{
 			System.out.println("Unrecgonized Choice!!");
@@ -1018,7 +1429,6 @@ public class Cafe {
 			case 1: UpdateUserInfo(esql);
 				break;
 			case 2: 
-				String update_query = "";
 				String login = "";
 				int prompt_r = 0;
 				do{
@@ -1026,9 +1436,7 @@ public class Cafe {
 					do{
 						System.out.print("\tEnter the loggin name that you want to update: ");
 						login = in.readLine();
-						String select_query = String.format("SELECT * FROM Users U WHERE U.login = '%s'", login);
-						int rowcount = esql.executeQuery(select_query);
-						if (rowcount == 0){
+						if (!esql.getOrders().userExists(login)){
 							System.out.println("Sorry we cannot find the username you are looking for.");
 							prompt_r = 1;
 						}
@@ -1038,17 +1446,8 @@ public class Cafe {
 					}while(prompt_r == 1);
 					System.out.print("\tWhat do you want to update that user's type to?");
 					String newtype = in.readLine();
-					if (newtype.equals("Manager")){
-						update_query = String.format("UPDATE Users SET type = '%s' WHERE login = '%s'", newtype, login);
-						esql.executeUpdate(update_query);	
-					}
-					else if (newtype.equals("Employee")){	
-						update_query = String.format("UPDATE Users SET type = '%s' WHERE login = '%s'", newtype, login);
-						esql.executeUpdate(update_query);	
-					}
-					else if (newtype.equals("Customer")){	
-						update_query = String.format("UPDATE Users SET type = '%s' WHERE login = '%s'", newtype, login);
-						esql.executeUpdate(update_query);		
+					if (newtype.equals("Manager") || newtype.equals("Employee") || newtype.equals("Customer")){
+						esql.getOrders().changeUserType(session(esql), login, newtype);
 					}
 					else{
 						System.out.println("Unrecognized type!!");
@@ -1079,8 +1478,6 @@ public class Cafe {
 		double price = 0.0;
 		String desrcb = "";
 		String URL = "";
-		String update_query = "";
-		String select_query = "";
 		int prompt_r = 0;
 			String S_itemName = "";
 		switch(readChoice()){
@@ -1095,7 +1492,7 @@ public class Cafe {
 					else{
 						prompt_r = 0;
 					}
-				}while(prompt_r == 0);
+				}while(prompt_r == 1);
 				do{
 					System.out.print("\tEnter the type for this item: ");
 					type = in.readLine();
@@ -1106,7 +1503,7 @@ public class Cafe {
 					else{
 						prompt_r = 0;
 					}
-				}while(prompt_r == 0);
+				}while(prompt_r == 1);
 				do{
 					try{
 						do{
@@ -1139,8 +1536,7 @@ public class Cafe {
 				if (URL.isEmpty()||URL.trim().isEmpty()){
 					URL = "";
 				}
-				update_query = String.format("INSERT INTO Menu (itemName, type, price, description, imageURL) VALUES ( '%s', '%s', '%s', '%s', '%s')", itemName,type,price,desrcb,URL);
-				esql.executeUpdate(update_query);
+				esql.getOrders().addMenuItem(session(esql), new MenuItem(itemName, type, price, desrcb, URL));
 	 			System.out.println("Added Succesfully");
 				break;
 			case 2:
@@ -1150,8 +1546,7 @@ public class Cafe {
 				do{
 					System.out.print("\tWhat is the name of the item you want to update");
 					S_itemName = in.readLine();
-					select_query = String.format("SELECT * FROM Menu WHERE itemName = '%s'",S_itemName);
-					rowcount = esql.executeQuery(select_query);
+					rowcount = esql.getMenu().get(S_itemName) == null ? 0 : 1;
 					if(rowcount == 0){
 						System.out.println("Sorry, we cannot find the item that you are looking for.");
 						prompt_r = 1;
@@ -1182,13 +1577,12 @@ public class Cafe {
 								prompt_r = 0;
 							}
 						}while(prompt_r ==1);
-						update_query = String.format("UPDATE Menu SET itemName = '%s' WHERE itemName = '%s'",np,S_itemName);
-						esql.executeUpdate(update_query);
+						esql.getOrders().updateMenuItem(session(esql), S_itemName, OrderService.MenuField.ITEMNAME, np);
 					}
 					else if (input == 2){
-						System.out.print("\tEnter the new type for the item: ");
-						nnum = in.readLine();
 						do{
+							System.out.print("\tEnter the new type for the item: ");
+							nnum = in.readLine();
 							if (nnum.isEmpty() || nnum.trim().isEmpty()){
 								System.out.println("new type for the item cannot be empty");
 								prompt_r = 1;
@@ -1197,8 +1591,7 @@ public class Cafe {
 								prompt_r = 0;
 							}
 						}while(prompt_r == 1);
-						update_query = String.format("UPDATE Menu SET type  = '%s' WHERE itemName = '%s'",nnum,S_itemName);
-						esql.executeUpdate(update_query);
+						esql.getOrders().updateMenuItem(session(esql), S_itemName, OrderService.MenuField.TYPE, nnum);
 					}
 					else if (input == 3){
 						do{
@@ -1224,8 +1617,7 @@ public class Cafe {
 							}
 						}while(true);
 		
-						update_query = String.format("UPDATE Menu SET price = '%s' WHERE itemName = '%s'",price,S_itemName);
-						esql.executeUpdate(update_query);
+						esql.getOrders().updateMenuItem(session(esql), S_itemName, OrderService.MenuField.PRICE, price);
 					}
 					else if (input == 4){
 						System.out.print("\tEnter the description");
@@ -1233,8 +1625,7 @@ public class Cafe {
 						if(desrcb.isEmpty()||desrcb.trim().isEmpty()){
 							desrcb = "";
 						}
-						update_query = String.format("UPDATE Menu SET description = '%s' WHERE itemName = '%s'",desrcb,S_itemName);
-						esql.executeUpdate(update_query);
+						esql.getOrders().updateMenuItem(session(esql), S_itemName, OrderService.MenuField.DESCRIPTION, desrcb);
 					}
 					else if (input == 5){
 						System.out.print("\tEnter the URL");
@@ -1242,8 +1633,7 @@ public class Cafe {
 						if(URL.isEmpty()||URL.trim().isEmpty()){
 							URL = "";
 						}
-						update_query = String.format("UPDATE Menu SET URL = '%s' WHERE itemName = '%s'",URL,S_itemName);
-						esql.executeUpdate(update_query);
+						esql.getOrders().updateMenuItem(session(esql), S_itemName, OrderService.MenuField.IMAGEURL, URL);
 					}
 					else{
 						System.out.println("Unrecgonized Choice!!");
@@ -1255,7 +1645,10 @@ public class Cafe {
 			case 3:
 				System.out.print("\tWhat is the name of the item you want to delete");
 				S_itemName = in.readLine();
-				select_query = String.format("DELETE * FROM Menu WHERE itemName = '%s'",S_itemName);
+				if (esql.getOrders().deleteMenuItem(session(esql), S_itemName))
+					System.out.println("Deleted Successfully");
+				else
+					System.out.println("Sorry, we cannot find the item that you are looking for.");
 				break;
  			default: 
 				System.out.println("\t Unrecgonized Choice!!");
@@ -1270,45 +1663,19 @@ public class Cafe {
 
    public static void ViewOrderStatus(Cafe esql){
 	try{
-		String user_type = find_type(esql);
-		String select_query = "";
-		String orderid = "";
+		Session session = session(esql);
+		int orderid = -1;
 		int rowcount = 0;
-		int prompt_r = 0;
-		switch(user_type){
-		case "Employee":
-			System.out.print("\tEnter the orderid: ");
-			orderid = in.readLine();
-			select_query = String.format("SELECT * FROM ItemStatus I WHERE I.orderid = '%s'",orderid);
-			rowcount = esql.executeQueryAndPrintResult(select_query);
-			System.out.println("Total row(s): " + rowcount);
-			break;
-		case "Manager ":
+		do{
 			System.out.print("\tEnter the orderid: ");
-			orderid = in.readLine();
-			select_query = String.format("SELECT * FROM ItemStatus I WHERE I.orderid = '%s'",orderid);
-			rowcount = esql.executeQueryAndPrintResult(select_query);
-			System.out.println("Total row(s): " + rowcount);
-			break;
-		case "Customer":
-			do{
-				System.out.print("\tEnter the orderid: ");
-				orderid = in.readLine();
-				select_query = String.format("SELECT * FROM Orders O WHERE O.orderid = '%s' AND O.login = '%s'", orderid, authorisedUser);
-				rowcount = esql.executeQuery(select_query);
-				if (rowcount == 0){
-					System.out.println("Sorry, we cannot find the order that you are looking for under your login");
-					prompt_r = 1;
-				}
-				else{
-					prompt_r = 0;
-				}
-			}while(prompt_r == 1);
-			select_query = String.format("SELECT * FROM ItemStatus I WHERE I.orderid = '%s'", orderid);
-			rowcount = esql.executeQueryAndPrintResult(select_query);
-			System.out.println("Total row(s): " + rowcount);
-			break;
-		}//end switch
+			orderid = parseId(in.readLine());
+			// customers only see their own orders, staff see every order
+			rowcount = esql.getOrders().viewOrderStatus(session, orderid, esql.getRenderer());
+			if (rowcount < 0){
+				System.out.println("Sorry, we cannot find the order that you are looking for under your login");
+			}
+		}while(rowcount < 0);
+		System.out.println("Total row(s): " + rowcount);
 		return;
 	}
 	catch(Exception e){
@@ -1319,8 +1686,7 @@ public class Cafe {
 
    public static void ViewCurrentOrder(Cafe esql){
 	try{
-		String select_query = String.format("SELECT orderid, login, timeStampRecieved, total FROM Orders WHERE paid = 'false' AND timeStampRecieved >= NOW() - '1 day'::INTERVAL");
-		int rowcount = esql.executeQueryAndPrintResult(select_query);
+		int rowcount = esql.getOrders().viewCurrentOrders(session(esql), esql.getRenderer());
 		System.out.println("Total row(s): " + rowcount);
 		return;
 	}
@@ -1330,6 +1696,97 @@ public class Cafe {
 	}
    }//end
 
+   /*
+    * Moves many items at once: every item of a list of orders, or one
+    * menu item on all open orders, each with a single statement
+    **/
+   public static void KitchenBatchUpdate(Cafe esql){
+	try{
+		Session session = session(esql);
+		System.out.println("\t1. Start orders");
+		System.out.println("\t2. Finish orders");
+		System.out.println("\t3. Advance one menu item on all open orders");
+		int choice = readChoice();
+		if (choice == 1 || choice == 2){
+			System.out.print("\tEnter the order IDs, separated by commas or spaces: ");
+			String[] parts = in.readLine().trim().split("[,\\s]+");
+			int[] orderids = new int[parts.length];
+			for (int i = 0; i < parts.length; ++i){
+				orderids[i] = parseId(parts[i]);
+				if (orderids[i] < 0){
+					System.out.println("Sorry, " + parts[i] + " is not an order ID.");
+					return;
+				}
+			}
+			int items = choice == 1 ? esql.getOrders().startOrders(session, orderids)
+			                        : esql.getOrders().finishOrders(session, orderids);
+			System.out.println(items + " item(s) " + (choice == 1 ? "started." : "finished."));
+		}
+		else if (choice == 3){
+			System.out.print("\tEnter the item name: ");
+			String itemName = in.readLine();
+			int items = esql.getOrders().advanceMenuItem(session, itemName);
+			System.out.println(items + " order line(s) advanced.");
+		}
+		else{
+			System.out.println("Unrecognized choice!");
+		}
+	}
+	catch(Exception e){
+		System.err.println (e.getMessage());
+		return;
+	}
+   }//end KitchenBatchUpdate
+
+   /*
+    * Shows the current orders once and then every change to an order as
+    * it happens, until the user presses Enter. Not dispatched as one
+    * operation, since it runs for as long as the user watches.
+    **/
+   public static void OrderFeed(Cafe esql){
+	try{
+		final Session session = session(esql);
+		// taken before the snapshot, so no change falls in between
+		final long first = esql.getOrders().latestEvent();
+		ViewCurrentOrder(esql);
+		System.out.println("Watching for changes to orders, press Enter to stop.");
+		Thread feed = new Thread(() -> {
+			long after = first;
+			try{
+				while (true){
+					for (OrderEvent event : esql.getOrders().waitForEvents(session, after, 1000).getEvents()){
+						if (event.getSeq() != after + 1)
+							System.out.println("(" + (event.getSeq() - after - 1) + " change(s) missed, view the current orders again)");
+						System.out.println(event);
+						after = event.getSeq();
+					}
+				}
+			}
+			catch(InterruptedException e){
+				// the user pressed Enter
+			}
+		}, "cafe-order-feed");
+		feed.setDaemon(true);
+		feed.start();
+		in.readLine();
+		feed.interrupt();
+		feed.join();
+	}
+	catch(Exception e){
+		System.err.println (e.getMessage());
+		return;
+	}
+   }//end OrderFeed
+
+   /*
+    * Prints the latency histograms of every operation and statement
+    **/
+   public static void PerformanceStats(Cafe esql){
+	esql.getMetrics().dump(System.out);
+	System.out.println();
+	System.out.println(esql.getPool().getStats());
+   }//end PerformanceStats
+
    public static void Query6(Cafe esql){
       // Your code goes here.
       // ...
@@ -0,0 +1,268 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class collects latency histograms for every SQL statement shape
+ * Cafe runs and for every business operation of the OrderService, and
+ * writes statements slower than a threshold to a slow-query log.
+ *
+ * A statement shape is its SQL text with ? placeholders, which already
+ * leaves the values out. Once a shape has been seen, recording it is a
+ * map lookup plus a few atomic increments and allocates nothing; only
+ * slow statements pay for formatting a log line.
+ *
+ * The slow-query log is off unless cafe.slowQueryMs is set. It goes to
+ * the file named by cafe.slowQueryLog (slow_queries.log by default), or
+ * to standard error when that is "-". A logged statement lists the types
+ * of the values bound to it but never the values, which include the
+ * passwords of LogIn, CreateUser and UpdateUserInfo.
+ *
+ * Operations that write with a compare-and-set on a row version also
+ * count how often the row had changed since it was read (conflicts) and
+ * how often they tried again because of it (retries).
+ *
+ */
+public class CafeMetrics {
+
+   /**
+    * The business operations that are timed, named like the console flows.
+    */
+   public enum Operation {
+      LOG_IN("LogIn"), CREATE_USER("CreateUser"), BROWSE_MENU("BrowseMenu"),
+      ADD_ORDER("AddOrder"), CHECK_ORDER("CheckOrder"), UPDATE_ORDER("UpdateOrder"),
+      MARK_PAID("MarkPaid"), ADVANCE_ITEM("AdvanceItemStatus"), ADVANCE_ORDERS("AdvanceOrders"),
+      VIEW_ORDER_STATUS("ViewOrderStatus"), VIEW_CURRENT_ORDER("ViewCurrentOrder"),
+      VIEW_ORDER_HISTORY("ViewOrderHistory"), UPDATE_USER_INFO("UpdateUserInfo"),
+      CHANGE_USER_TYPE("ChangeUserType"), UPDATE_MENU("UpdateMenu");
+
+      private final String _label;
+
+      Operation (String label) {
+         this._label = label;
+      }//end Operation
+
+      public String getLabel () {
+         return this._label;
+      }//end getLabel
+   }//end Operation
+
+   // SQL text -> histogram
+   private final ConcurrentHashMap<String, LatencyHistogram> _statements =
+      new ConcurrentHashMap<String, LatencyHistogram>();
+
+   // one histogram per Operation, indexed by ordinal
+   private final LatencyHistogram[] _operations;
+
+   // per Operation, indexed by ordinal: version conflicts and retries
+   private final AtomicLongArray _conflicts = new AtomicLongArray(Operation.values().length);
+   private final AtomicLongArray _retries = new AtomicLongArray(Operation.values().length);
+
+   // statements at or above this are logged, Long.MAX_VALUE when off
+   private final long _slowNanos;
+
+   // where slow statements are written, null when off
+   private final PrintStream _slowLog;
+
+   /**
+    * Creates a new collector
+    *
+    * @param slowQueryMs threshold of the slow-query log, negative to turn it off
+    * @param slowLog where slow statements are written, may be null when off
+    */
+   public CafeMetrics (long slowQueryMs, PrintStream slowLog) {
+      this._operations = new LatencyHistogram[Operation.values().length];
+      for (int i = 0; i < this._operations.length; ++i)
+         this._operations[i] = new LatencyHistogram();
+      boolean on = slowQueryMs >= 0 && slowLog != null;
+      this._slowNanos = on ? TimeUnit.MILLISECONDS.toNanos(slowQueryMs) : Long.MAX_VALUE;
+      this._slowLog = on ? slowLog : null;
+   }//end CafeMetrics
+
+   /**
+    * Creates a collector configured by cafe.slowQueryMs and cafe.slowQueryLog.
+    *
+    * @return the new collector
+    */
+   public static CafeMetrics fromSystemProperties () {
+      long slowQueryMs = Long.getLong("cafe.slowQueryMs", -1L);
+      PrintStream log = null;
+      if (slowQueryMs >= 0){
+         String target = System.getProperty("cafe.slowQueryLog", "slow_queries.log");
+         if ("-".equals(target)){
+            log = System.err;
+         }else{
+            try{
+               log = new PrintStream(new FileOutputStream(target, true), true);
+            }catch (IOException e){
+               System.err.println("cannot open the slow-query log " + target + ": " + e.getMessage());
+            }//end try
+         }//end if
+      }//end if
+      return new CafeMetrics(slowQueryMs, log);
+   }//end fromSystemProperties
+
+   /**
+    * Method to record one statement. Called by Cafe for every statement.
+    *
+    * @param sql the SQL text that ran
+    * @param startNanos System.nanoTime() before it ran
+    * @param params the values bound to it, only their types are logged
+    */
+   public void recordStatement (String sql, long startNanos, Object[] params) {
+      long nanos = System.nanoTime() - startNanos;
+      LatencyHistogram h = this._statements.get(sql);
+      if (h == null)
+         h = this._statements.computeIfAbsent(sql, k -> new LatencyHistogram());
+      h.record(nanos);
+      if (nanos >= this._slowNanos)
+         logSlow(sql, nanos, params);
+   }//end recordStatement
+
+   /**
+    * Method to record one business operation.
+    *
+    * @param op the operation
+    * @param startNanos System.nanoTime() when it started
+    */
+   public void recordOperation (Operation op, long startNanos) {
+      this._operations[op.ordinal()].record(System.nanoTime() - startNanos);
+   }//end recordOperation
+
+   public LatencyHistogram getOperation (Operation op) {
+      return this._operations[op.ordinal()];
+   }//end getOperation
+
+   /**
+    * Method to count a compare-and-set that found the row changed since
+    * it was read.
+    *
+    * @param op the operation that wrote
+    */
+   public void recordConflict (Operation op) {
+      this._conflicts.incrementAndGet(op.ordinal());
+   }//end recordConflict
+
+   /**
+    * Method to count one more attempt after a conflict.
+    *
+    * @param op the operation that wrote
+    */
+   public void recordRetry (Operation op) {
+      this._retries.incrementAndGet(op.ordinal());
+   }//end recordRetry
+
+   public long getConflicts (Operation op) {
+      return this._conflicts.get(op.ordinal());
+   }//end getConflicts
+
+   public long getRetries (Operation op) {
+      return this._retries.get(op.ordinal());
+   }//end getRetries
+
+   /**
+    * @return statement shape -> histogram, a live view
+    */
+   public Map<String, LatencyHistogram> getStatements () {
+      return this._statements;
+   }//end getStatements
+
+   /**
+    * Method to write count, p50, p99, p99.9 and max of every operation and
+    * statement shape that ran at least once, slowest p99 first, and the
+    * conflicts and retries of every operation that had any.
+    *
+    * @param out where the tables are written
+    */
+   public void dump (PrintStream out) {
+      out.printf("%-24s %9s %10s %10s %10s %10s%n", "operation", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+      List<Map.Entry<String, LatencyHistogram>> ops = new ArrayList<Map.Entry<String, LatencyHistogram>>();
+      for (Operation op : Operation.values())
+         ops.add(Map.entry(op.getLabel(), this._operations[op.ordinal()]));
+      dumpRows(out, ops, 24);
+
+      boolean header = false;
+      for (Operation op : Operation.values()){
+         long conflicts = getConflicts(op);
+         if (conflicts == 0 && getRetries(op) == 0)
+            continue;
+         if (!header){
+            out.println();
+            out.printf("%-24s %9s %9s%n", "operation", "conflicts", "retries");
+            header = true;
+         }//end if
+         out.printf("%-24s %9d %9d%n", op.getLabel(), conflicts, getRetries(op));
+      }//end for
+
+      out.println();
+      out.printf("%-60s %9s %10s %10s %10s %10s%n", "statement", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+      dumpRows(out, new ArrayList<Map.Entry<String, LatencyHistogram>>(this._statements.entrySet()), 60);
+   }//end dump
+
+   /**
+    * Method to forget everything recorded so far.
+    */
+   public void reset () {
+      for (LatencyHistogram h : this._operations)
+         h.reset();
+      for (LatencyHistogram h : this._statements.values())
+         h.reset();
+      for (int i = 0; i < this._conflicts.length(); ++i){
+         this._conflicts.set(i, 0);
+         this._retries.set(i, 0);
+      }//end for
+   }//end reset
+
+   private static void dumpRows (PrintStream out, List<Map.Entry<String, LatencyHistogram>> rows, int width) {
+      rows.removeIf(e -> e.getValue().getCount() == 0);
+      rows.sort((a, b) -> Long.compare(b.getValue().getPercentileNanos(0.99), a.getValue().getPercentileNanos(0.99)));
+      for (Map.Entry<String, LatencyHistogram> e : rows){
+         LatencyHistogram h = e.getValue();
+         String name = e.getKey().replaceAll("\\s+", " ");
+         if (name.length() > width)
+            name = name.substring(0, width - 3) + "...";
+         out.printf("%-" + width + "s %9d %10.3f %10.3f %10.3f %10.3f%n", name, h.getCount(),
+            h.getPercentileNanos(0.50) / 1e6, h.getPercentileNanos(0.99) / 1e6,
+            h.getPercentileNanos(0.999) / 1e6, h.getMaxNanos() / 1e6);
+      }//end for
+   }//end dumpRows
+
+   private void logSlow (String sql, long nanos, Object[] params) {
+      String line = String.format("%s %.3f ms %s %s", LocalDateTime.now(), nanos / 1e6,
+         sql.replaceAll("\\s+", " "), paramTypes(params));
+      synchronized (this._slowLog){
+         this._slowLog.println(line);
+      }//end synchronized
+   }//end logSlow
+
+   // [String, Integer, null], the values themselves may be credentials
+   private static String paramTypes (Object[] params) {
+      StringBuilder sb = new StringBuilder().append('[');
+      for (int i = 0; i < params.length; ++i){
+         if (i > 0)
+            sb.append(", ");
+         sb.append(params[i] == null ? "null" : params[i].getClass().getSimpleName());
+      }//end for
+      return sb.append(']').toString();
+   }//end paramTypes
+
+}//end CafeMetrics
@@ -0,0 +1,137 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class defines the Java Flight Recorder event for one cafe
+ * operation: a menu action dispatched from Cafe.main or a request of the
+ * CafeServer. While an operation runs, the SqlRoundTripEvents of its
+ * thread are tagged with its name and summed into it, so a database
+ * stall in JDK Mission Control can be traced back to the action that
+ * caused it.
+ *
+ * The event is disabled by default and costs next to nothing until a
+ * recording turns it on, for example with
+ *
+ *   -XX:StartFlightRecording:settings=default,settings=cafe.jfc
+ *
+ */
+@Name("cafe.Operation")
+@Label("Cafe Operation")
+@Category("Cafe")
+@Description("A menu action or server request")
+@StackTrace(false)
+@Enabled(false)
+public class CafeOperationEvent extends Event {
+
+   // operation running on the current thread, only set while recording
+   private static final ThreadLocal<CafeOperationEvent> CURRENT = new ThreadLocal<CafeOperationEvent>();
+
+   @Label("Operation")
+   String operation;
+
+   @Label("Login")
+   String login;
+
+   @Label("Order Id")
+   @Description("The order the operation worked on, -1 when none")
+   int orderId = -1;
+
+   @Label("Item Count")
+   @Description("Distinct items ordered or changed")
+   int itemCount;
+
+   @Label("SQL Round Trips")
+   int sqlCount;
+
+   @Label("Rows")
+   @Description("Rows returned or affected by all round trips")
+   long rowCount;
+
+   @Label("Bytes")
+   @Description("Approximate bytes of parameters and results of all round trips")
+   @DataAmount
+   long bytes;
+
+   /**
+    * Method to start timing an operation on the current thread.
+    *
+    * @param operation the name of the menu action or request
+    * @param login the user it runs for, may be null
+    * @return the event to hand to finish(), or null when the event is
+    *         not being recorded
+    */
+   public static CafeOperationEvent start (String operation, String login) {
+      CafeOperationEvent event = new CafeOperationEvent();
+      if (!event.isEnabled())
+         return null;
+      event.operation = operation;
+      event.login = login == null ? null : login.trim();
+      event.begin();
+      CURRENT.set(event);
+      return event;
+   }//end start
+
+   /**
+    * Method to end an operation started with start() and commit it.
+    *
+    * @param event the value start() returned, null is ignored
+    */
+   public static void finish (CafeOperationEvent event) {
+      if (event == null)
+         return;
+      CURRENT.remove();
+      event.end();
+      if (event.shouldCommit())
+         event.commit();
+   }//end finish
+
+   /**
+    * @return the operation being recorded on this thread, or null
+    */
+   static CafeOperationEvent current () {
+      return CURRENT.get();
+   }//end current
+
+   /**
+    * Method to note the order the current operation works on.
+    *
+    * @param orderId the order
+    * @param itemCount distinct items ordered or changed, 0 when unknown
+    */
+   public static void noteOrder (int orderId, int itemCount) {
+      CafeOperationEvent event = CURRENT.get();
+      if (event == null)
+         return;
+      event.orderId = orderId;
+      event.itemCount += itemCount;
+   }//end noteOrder
+
+   void addRoundTrip (long rows, long bytes) {
+      ++this.sqlCount;
+      this.rowCount += Math.max(0, rows);
+      this.bytes += Math.max(0, bytes);
+   }//end addRoundTrip
+
+   String getOperation () {
+      return this.operation;
+   }//end getOperation
+
+}//end CafeOperationEvent
@@ -0,0 +1,578 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class serves the operations of the Customer, Employee and Manager
+ * menus over HTTP, so many clients can use one process at the same time.
+ * It is built on the JDK's own HTTP server and the headless OrderService.
+ *
+ * Every request runs on its own virtual thread when the JDK has them
+ * (Java 21 and later) and on a cached platform thread pool otherwise. A
+ * waiting client therefore costs a parked thread and a token entry,
+ * nothing more; database work is bounded by the connection pool, sized
+ * with cafe.pool.maxSize, and requests that cannot get a connection
+ * within cafe.pool.borrowTimeoutMs are answered with 503.
+ *
+ * Requests send their arguments as query string or form parameters.
+ * After POST /login the returned token goes in the X-Cafe-Session header
+ * of every further request. A token stands for its login only: the
+ * server's OrderService keeps no session cache, so the profile is read
+ * again on every request and a user whose type was changed, by this
+ * server or any other process, has the new rights from the next request
+ * on. Tokens not used for
+ * cafe.server.idleTimeoutMs (30 minutes by default) expire. Answers are
+ * plain text, tables are laid out like on the console.
+ *
+ *   POST /users            login, password, [phone]     create a customer
+ *   POST /login            login, password              -> token
+ *   POST /logout
+ *   GET  /menu             [name] | [type] | [q]        browse the menu, q looks
+ *                                                       in name, type and description
+ *   POST /orders           item, amount, [comment] ...  -> orderid
+ *   POST /orders/update    orderid, item, amount, [comment] ...
+ *   GET  /orders/history
+ *   GET  /orders/status    orderid
+ *   GET  /orders/current                                staff
+ *   POST /orders/paid      orderid                      staff
+ *   POST /orders/advance   orderid, item                staff
+ *   POST /orders/start     orderid...                   staff
+ *   POST /orders/finish    orderid...                   staff
+ *   POST /kitchen/advance  item                         staff
+ *   GET  /orders/feed      [after], [waitMs]            staff
+ *   POST /user/password    password
+ *   POST /user/phone       phone
+ *   POST /user/favorite    item
+ *   POST /users/type       login, type                  manager
+ *   POST /menu/add         item, type, price, [description], [imageURL]
+ *   POST /menu/update      item, field, value           manager
+ *   POST /menu/delete      item                         manager
+ *   GET  /stats                                         manager
+ *
+ * item, amount and comment may repeat to order several items at once;
+ * orderid may repeat to start or finish several orders at once.
+ *
+ * /orders/feed is a long poll: it answers with the order events after
+ * the event number given as after (0 when omitted), one per line, as soon
+ * as there are any or after waitMs (25000 at most) with none. The last
+ * line is always "latest <n>", the number to pass as after next time.
+ *
+ * Usage: java CafeServer <dbname> <port> [httpPort]
+ */
+public class CafeServer {
+
+   // header that carries the session token
+   private static final String SESSION_HEADER = "X-Cafe-Session";
+
+   private final OrderService _orders;
+   private final MenuCache _menu;
+   private final HttpServer _server;
+   private final ExecutorService _executor;
+
+   // how often expired tokens are looked for
+   private static final long SWEEP_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+   // the login a token was handed out to and when it was last used
+   private static final class Token {
+      final String login;
+      volatile long lastUsed;
+
+      Token (String login, long lastUsed) {
+         this.login = login;
+         this.lastUsed = lastUsed;
+      }//end Token
+   }//end Token
+
+   // token -> login
+   private final ConcurrentHashMap<String, Token> _tokens = new ConcurrentHashMap<String, Token>();
+
+   // tokens unused this long are dropped
+   private final long _idleNanos = TimeUnit.MILLISECONDS.toNanos(
+      Long.getLong("cafe.server.idleTimeoutMs", TimeUnit.MINUTES.toMillis(30)));
+
+   // System.nanoTime() of the last look for expired tokens
+   private final AtomicLong _lastSweep = new AtomicLong(System.nanoTime());
+
+   private final SecureRandom _random = new SecureRandom();
+
+   /**
+    * The parameters and session of one request.
+    */
+   private static final class Request {
+      final Map<String, List<String>> params;
+      final String token;
+      final Session session;
+
+      Request (Map<String, List<String>> params, String token, Session session) {
+         this.params = params;
+         this.token = token;
+         this.session = session;
+      }//end Request
+
+      String get (String name) {
+         List<String> values = this.params.get(name);
+         if (values == null || values.isEmpty())
+            throw new IllegalArgumentException("missing parameter " + name);
+         return values.get(0);
+      }//end get
+
+      String get (String name, String fallback) {
+         List<String> values = this.params.get(name);
+         return values == null || values.isEmpty() ? fallback : values.get(0);
+      }//end get
+
+      List<String> all (String name) {
+         List<String> values = this.params.get(name);
+         return values == null ? Collections.<String>emptyList() : values;
+      }//end all
+
+      int getInt (String name) {
+         try{
+            return Integer.parseInt(get(name).trim());
+         }catch (NumberFormatException e){
+            throw new IllegalArgumentException(name + " must be a number");
+         }//end try
+      }//end getInt
+
+      int[] getInts (String name) {
+         List<String> values = all(name);
+         if (values.isEmpty())
+            throw new IllegalArgumentException("missing parameter " + name);
+         int[] ints = new int[values.size()];
+         try{
+            for (int i = 0; i < ints.length; ++i)
+               ints[i] = Integer.parseInt(values.get(i).trim());
+         }catch (NumberFormatException e){
+            throw new IllegalArgumentException(name + " must be a number");
+         }//end try
+         return ints;
+      }//end getInts
+
+      Session session () {
+         if (this.session == null)
+            throw new NotLoggedInException();
+         return this.session;
+      }//end session
+   }//end Request
+
+   // one endpoint, returns the text of the answer
+   private interface Endpoint {
+      String handle (Request request) throws Exception;
+   }//end Endpoint
+
+   private static final class NotLoggedInException extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      NotLoggedInException () {
+         super("log in first and send the token in the " + SESSION_HEADER + " header");
+      }//end NotLoggedInException
+   }//end NotLoggedInException
+
+   // an answer with a status other than 200
+   private static final class HttpStatus extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      final int code;
+
+      HttpStatus (int code, String message) {
+         super(message);
+         this.code = code;
+      }//end HttpStatus
+   }//end HttpStatus
+
+   /**
+    * Creates a new server, it does not accept requests before start()
+    *
+    * @param esql the instance whose pool and service the requests use
+    * @param port the TCP port to listen on
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public CafeServer (Cafe esql, int port) throws IOException {
+      // no session cache, every request reads the current profile
+      this._orders = new OrderService(esql, false);
+      this._menu = esql.getMenu();
+      this._server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("cafe.server.backlog", 1024));
+      this._executor = newRequestExecutor();
+      this._server.setExecutor(this._executor);
+
+      post("/users", r -> {
+         this._orders.createUser(r.get("login"), r.get("password"), r.get("phone", ""));
+         return "User successfully created!";
+      });
+      post("/login", r -> {
+         Session session = this._orders.logIn(r.get("login"), r.get("password"));
+         if (session == null)
+            throw new HttpStatus(401, "wrong login or password");
+         String token = newToken();
+         this._tokens.put(token, new Token(session.getLogin(), System.nanoTime()));
+         return token;
+      });
+      post("/logout", r -> {
+         r.session();
+         this._tokens.remove(r.token);
+         return "Bye !";
+      });
+      get("/menu", r -> table(renderer -> r.params.containsKey("type")
+         ? this._orders.browseMenuByType(r.get("type"), renderer)
+         : r.params.containsKey("q")
+         ? this._orders.searchMenu(r.get("q"), renderer)
+         : this._orders.browseMenuByName(r.get("name", ""), renderer)));
+
+      post("/orders", r -> "Orderid is " + this._orders.placeOrder(r.session(), cart(r)));
+      post("/orders/update", r -> {
+         OrderCart cart = cart(r);
+         return orderAnswer(this._orders.updateOrder(r.session(), r.getInt("orderid"), cart),
+            "Order has been successfully updated.");
+      });
+      get("/orders/history", r -> table(renderer -> this._orders.viewOrderHistory(r.session(), renderer)));
+      get("/orders/status", r -> {
+         final int orderid = r.getInt("orderid");
+         return table(renderer -> {
+            int rows = this._orders.viewOrderStatus(r.session(), orderid, renderer);
+            if (rows < 0)
+               throw new HttpStatus(404, "Sorry, we cannot find the order that you are looking for under your login");
+            return rows;
+         });
+      });
+      get("/orders/current", r -> table(renderer -> this._orders.viewCurrentOrders(r.session(), renderer)));
+      post("/orders/paid", r -> {
+         if (!this._orders.markPaid(r.session(), r.getInt("orderid")))
+            throw new HttpStatus(404, "Sorry, we cannot find the order.");
+         return "Order marked paid.";
+      });
+      post("/orders/advance", r -> {
+         String status = this._orders.advanceItemStatus(r.session(), r.getInt("orderid"), r.get("item"));
+         if (status == null)
+            throw new HttpStatus(409, "The item is not on the order, already finished or was just changed.");
+         return status;
+      });
+      post("/orders/start", r -> this._orders.startOrders(r.session(), r.getInts("orderid")) + " item(s) started.");
+      post("/orders/finish", r -> this._orders.finishOrders(r.session(), r.getInts("orderid")) + " item(s) finished.");
+      get("/orders/feed", r -> {
+         long after = Long.parseLong(r.get("after", "0").trim());
+         long waitMs = Math.max(0L, Math.min(25000L, Long.parseLong(r.get("waitMs", "25000").trim())));
+         OrderEventBus.Batch batch = this._orders.waitForEvents(r.session(), after, waitMs);
+         StringBuilder sb = new StringBuilder();
+         for (OrderEvent event : batch.getEvents())
+            sb.append(event).append('\n');
+         // read with the events, so a number from before a restart of the
+         // server comes back clamped and nothing published since is skipped
+         return sb.append("latest ").append(batch.getLast()).toString();
+      });
+      post("/kitchen/advance", r -> this._orders.advanceMenuItem(r.session(), r.get("item")) + " order line(s) advanced.");
+
+      post("/user/password", r -> {
+         this._orders.updatePassword(r.session(), r.get("password"));
+         return "Update Successfully";
+      });
+      post("/user/phone", r -> {
+         this._orders.updatePhone(r.session(), r.get("phone", ""));
+         return "Update Successfully";
+      });
+      post("/user/favorite", r -> {
+         this._orders.addFavoriteItem(r.session(), r.get("item"));
+         return "Update Successfully";
+      });
+      post("/users/type", r -> {
+         if (!this._orders.changeUserType(r.session(), r.get("login"), r.get("type")))
+            throw new HttpStatus(404, "Sorry we cannot find the username you are looking for.");
+         return "Update Successfully";
+      });
+
+      post("/menu/add", r -> {
+         this._orders.addMenuItem(r.session(), new MenuItem(r.get("item"), r.get("type"),
+            parsePrice(r.get("price")), r.get("description", ""), r.get("imageURL", "")));
+         return "Added Succesfully";
+      });
+      post("/menu/update", r -> {
+         OrderService.MenuField field;
+         try{
+            field = OrderService.MenuField.valueOf(r.get("field").trim().toUpperCase());
+         }catch (IllegalArgumentException e){
+            throw new IllegalArgumentException("field must be one of itemName, type, price, description, imageURL");
+         }//end try
+         Object value = field == OrderService.MenuField.PRICE ? (Object) parsePrice(r.get("value")) : r.get("value");
+         if (this._orders.updateMenuItem(r.session(), r.get("item"), field, value) == null)
+            throw new HttpStatus(404, "Sorry, we cannot find the item that you are looking for.");
+         return "Update Successfully";
+      });
+      get("/stats", r -> {
+         if (!r.session().isManager())
+            throw new SecurityException(r.session() + " may not view the stats");
+         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+         PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+         esql.getMetrics().dump(out);
+         out.println();
+         out.print(esql.getPool().getStats());
+         out.flush();
+         return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+      });
+      post("/menu/delete", r -> {
+         if (!this._orders.deleteMenuItem(r.session(), r.get("item")))
+            throw new HttpStatus(404, "Sorry, we cannot find the item that you are looking for.");
+         return "Deleted Successfully";
+      });
+   }//end CafeServer
+
+   public void start () {
+      this._server.start();
+   }//end start
+
+   /**
+    * Method to stop accepting requests, wait up to delaySeconds for the
+    * running ones and release the threads.
+    *
+    * @param delaySeconds how long running requests may take to finish
+    */
+   public void stop (int delaySeconds) {
+      this._server.stop(delaySeconds);
+      this._executor.shutdown();
+   }//end stop
+
+   /**
+    * @return the number of tokens handed out that have not been logged
+    *         out or dropped as expired yet
+    */
+   public int getSessionCount () {
+      return this._tokens.size();
+   }//end getSessionCount
+
+   /*
+    * One virtual thread per request where the JDK has them. Looked up
+    * reflectively so the server still builds and runs on Java 17.
+    */
+   private static ExecutorService newRequestExecutor () {
+      try{
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }catch (ReflectiveOperationException e){
+         return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "cafe-server");
+            t.setDaemon(true);
+            return t;
+         });
+      }//end try
+   }//end newRequestExecutor
+
+   // renders into the answer through a per request TableRenderer
+   private interface TableQuery {
+      int render (ResultRenderer renderer) throws SQLException;
+   }//end TableQuery
+
+   private static String table (TableQuery query) throws SQLException {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      int rows = query.render(new TableRenderer(buffer, 500, 50, null, false));
+      return new String(buffer.toByteArray(), StandardCharsets.UTF_8) + "Total row(s): " + rows;
+   }//end table
+
+   private OrderCart cart (Request r) {
+      OrderCart cart = new OrderCart(this._menu);
+      List<String> names = r.all("item");
+      List<String> counts = r.all("amount");
+      List<String> notes = r.all("comment");
+      if (names.size() != counts.size())
+         throw new IllegalArgumentException("every item needs an amount");
+      for (int i = 0; i < names.size(); ++i){
+         String name = names.get(i);
+         int amount;
+         try{
+            amount = Integer.parseInt(counts.get(i).trim());
+         }catch (NumberFormatException e){
+            throw new IllegalArgumentException("amount must be a number");
+         }//end try
+         cart.add(name, amount, i < notes.size() ? notes.get(i) : "null");
+      }//end for
+      return cart;
+   }//end cart
+
+   private static String orderAnswer (OrderService.OrderState state, String ok) {
+      if (state == OrderService.OrderState.MISSING)
+         throw new HttpStatus(404, "Sorry, we cannot find your order.");
+      if (state == OrderService.OrderState.PAID)
+         throw new HttpStatus(409, "Sorry, this order can't be change because it has been paid.");
+      return ok;
+   }//end orderAnswer
+
+   private static double parsePrice (String price) {
+      try{
+         return Double.parseDouble(price.trim());
+      }catch (NumberFormatException e){
+         throw new IllegalArgumentException("You can only enter positive numbers");
+      }//end try
+   }//end parsePrice
+
+   /*
+    * The session of a token that has not been idle too long, opened
+    * again on every request so it always has the user's current type.
+    */
+   private Session session (String token) throws SQLException {
+      long now = System.nanoTime();
+      sweep(now);
+      Token t = this._tokens.get(token);
+      if (t == null)
+         return null;
+      if (now - t.lastUsed > this._idleNanos){
+         this._tokens.remove(token, t);
+         return null;
+      }//end if
+      t.lastUsed = now;
+      Session session = this._orders.openSession(t.login);
+      if (session == null)
+         this._tokens.remove(token, t);
+      return session;
+   }//end session
+
+   // drops expired tokens, at most once every SWEEP_NANOS
+   private void sweep (long now) {
+      long last = this._lastSweep.get();
+      if (now - last < SWEEP_NANOS || !this._lastSweep.compareAndSet(last, now))
+         return;
+      this._tokens.values().removeIf(t -> now - t.lastUsed > this._idleNanos);
+   }//end sweep
+
+   private String newToken () {
+      byte[] bytes = new byte[24];
+      this._random.nextBytes(bytes);
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+   }//end newToken
+
+   private void get (String path, Endpoint endpoint) {
+      route("GET", path, endpoint);
+   }//end get
+
+   private void post (String path, Endpoint endpoint) {
+      route("POST", path, endpoint);
+   }//end post
+
+   private void route (final String method, final String path, final Endpoint endpoint) {
+      this._server.createContext(path, exchange -> {
+         int code = 200;
+         String body;
+         try{
+            if (!exchange.getRequestURI().getPath().equals(path))
+               throw new HttpStatus(404, "no such endpoint");
+            if (!exchange.getRequestMethod().equalsIgnoreCase(method))
+               throw new HttpStatus(405, "use " + method);
+            String token = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+            Session session = token == null ? null : session(token);
+            CafeOperationEvent event = CafeOperationEvent.start(method + " " + path,
+               session == null ? null : session.getLogin());
+            try{
+               body = endpoint.handle(new Request(params(exchange), token, session));
+            }finally{
+               CafeOperationEvent.finish(event);
+            }//end try
+         }catch (HttpStatus e){
+            code = e.code;
+            body = e.getMessage();
+         }catch (NotLoggedInException e){
+            code = 401;
+            body = e.getMessage();
+         }catch (IllegalArgumentException e){
+            code = 400;
+            body = e.getMessage();
+         }catch (SecurityException e){
+            code = 403;
+            body = e.getMessage();
+         }catch (SQLTransientConnectionException e){
+            code = 503;
+            body = e.getMessage();
+         }catch (Exception e){
+            code = 500;
+            body = e.getMessage();
+         }//end try
+         respond(exchange, code, body);
+      });
+   }//end route
+
+   private static void respond (HttpExchange exchange, int code, String body) throws IOException {
+      byte[] bytes = ((body == null ? "" : body) + "\n").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(code, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      try{
+         out.write(bytes);
+      }finally{
+         out.close();
+      }//end try
+   }//end respond
+
+   /*
+    * Query string and urlencoded form parameters, in the order sent.
+    */
+   private static Map<String, List<String>> params (HttpExchange exchange) throws IOException {
+      Map<String, List<String>> params = new HashMap<String, List<String>>();
+      decode(exchange.getRequestURI().getRawQuery(), params);
+      InputStream in = exchange.getRequestBody();
+      try{
+         decode(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+      }finally{
+         in.close();
+      }//end try
+      return params;
+   }//end params
+
+   private static void decode (String raw, Map<String, List<String>> params) {
+      if (raw == null || raw.isEmpty())
+         return;
+      for (String pair : raw.split("&")){
+         if (pair.isEmpty())
+            continue;
+         int eq = pair.indexOf('=');
+         String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+         String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+         params.computeIfAbsent(name, k -> new ArrayList<String>()).add(value);
+      }//end for
+   }//end decode
+
+   public static void main (String[] args) throws Exception {
+      if (args.length < 2){
+         System.err.println("Usage: java " + CafeServer.class.getName() + " <dbname> <port> [httpPort]");
+         return;
+      }//end if
+      int httpPort = args.length > 2 ? Integer.parseInt(args[2]) : Integer.getInteger("cafe.server.port", 8080);
+      Class.forName ("org.postgresql.Driver");
+      final Cafe esql = new Cafe(args[0], args[1]);
+      final CafeServer server = new CafeServer(esql, httpPort);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+         server.stop(2);
+         esql.cleanup();
+      }));
+      server.start();
+      System.out.println("Cafe server listening on port " + httpPort
+         + " (database connections: " + esql.getPool().getMaxSize() + ")");
+   }//end main
+
+}//end CafeServer
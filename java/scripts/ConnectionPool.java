@@ -0,0 +1,297 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * This class defines a small bounded pool of physical connections so that
+ * several sessions or worker threads can talk to the database at the same
+ * time. Connections are validated before they are handed out again, idle
+ * connections above the minimum size are evicted in the background and
+ * every borrow is timed. The same background task opens new connections
+ * when broken ones brought the pool below its minimum size.
+ *
+ */
+public class ConnectionPool {
+
+   // where new physical connections come from
+   private final DataSource _dataSource;
+
+   private final int _minSize;
+   private final int _maxSize;
+   private final long _borrowTimeoutMs;
+   private final long _idleTimeoutNanos;
+   private final long _validationIntervalNanos;
+   private final int _statementCacheSize;
+
+   // one permit per connection that may be handed out
+   private final Semaphore _permits;
+
+   // idle connections, most recently returned first so warm ones are reused
+   private final LinkedBlockingDeque<PooledConnection> _idle = new LinkedBlockingDeque<PooledConnection>();
+
+   // background idle eviction
+   private final ScheduledExecutorService _evictor;
+
+   // number of physical connections currently open (idle + borrowed)
+   private final AtomicInteger _open = new AtomicInteger();
+
+   // metrics
+   private final AtomicLong _borrows = new AtomicLong();
+   private final AtomicLong _borrowTimeouts = new AtomicLong();
+   private final AtomicLong _borrowWaitNanos = new AtomicLong();
+   private final AtomicLong _maxBorrowWaitNanos = new AtomicLong();
+   private final AtomicLong _created = new AtomicLong();
+   private final AtomicLong _evicted = new AtomicLong();
+   private final AtomicLong _invalidated = new AtomicLong();
+
+   private volatile boolean _closed = false;
+
+   /**
+    * Creates a new pool and opens the minimum number of connections
+    *
+    * @param dataSource where physical connections are opened
+    * @param minSize connections kept open even when idle
+    * @param maxSize upper bound on connections open at once
+    * @param borrowTimeoutMs how long a borrow waits for a free connection
+    * @param idleTimeoutMs how long a connection above minSize may sit idle
+    * @param validationIntervalMs idle time after which a connection is validated before reuse
+    * @param statementCacheSize prepared statements cached per connection
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public ConnectionPool (DataSource dataSource, int minSize, int maxSize,
+                          long borrowTimeoutMs, long idleTimeoutMs,
+                          long validationIntervalMs, int statementCacheSize) throws SQLException {
+      if (maxSize < 1 || minSize < 0 || minSize > maxSize)
+         throw new IllegalArgumentException("invalid pool size: min=" + minSize + " max=" + maxSize);
+      this._dataSource = dataSource;
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+      this._borrowTimeoutMs = borrowTimeoutMs;
+      this._idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+      this._validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMs);
+      this._statementCacheSize = statementCacheSize;
+      this._permits = new Semaphore(maxSize, true);
+
+      try{
+         for (int i = 0; i < minSize; ++i)
+            this._idle.addLast(open());
+      }catch (SQLException | RuntimeException e){
+         // nothing else would ever close the ones already open
+         PooledConnection pc;
+         while ((pc = this._idle.pollFirst()) != null)
+            discard(pc);
+         throw e;
+      }//end try
+
+      this._evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "cafe-pool-evictor");
+         t.setDaemon(true);
+         return t;
+      });
+      long period = Math.max(1000L, idleTimeoutMs / 2);
+      this._evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+   }//end ConnectionPool
+
+   /**
+    * Method to borrow a connection. The caller must hand it back with
+    * release() once it is done, normally in a finally block.
+    *
+    * @return a validated connection in autocommit mode
+    * @throws java.sql.SQLException when a new connection cannot be opened,
+    *         a SQLTransientConnectionException when no connection frees up
+    *         within the borrow timeout
+    */
+   public PooledConnection borrow () throws SQLException {
+      if (this._closed)
+         throw new SQLException("Connection pool is closed");
+
+      long start = System.nanoTime();
+      boolean acquired;
+      try{
+         acquired = this._permits.tryAcquire(this._borrowTimeoutMs, TimeUnit.MILLISECONDS);
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for a connection", e);
+      }//end try
+      long waited = System.nanoTime() - start;
+      if (!acquired){
+         this._borrowTimeouts.incrementAndGet();
+         throw new SQLTransientConnectionException("Timed out after " + this._borrowTimeoutMs
+            + " ms waiting for a database connection (pool max " + this._maxSize + ")");
+      }//end if
+      this._borrows.incrementAndGet();
+      this._borrowWaitNanos.addAndGet(waited);
+      this._maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+
+      try{
+         PooledConnection pc;
+         while ((pc = this._idle.pollFirst()) != null){
+            if (System.nanoTime() - pc.getLastReturned() < this._validationIntervalNanos
+                || isValid(pc))
+               return pc;
+            this._invalidated.incrementAndGet();
+            discard(pc);
+         }//end while
+         return open();
+      }catch (SQLException e){
+         this._permits.release();
+         throw e;
+      }//end try
+   }//end borrow
+
+   /**
+    * Method to give a borrowed connection back to the pool. Connections
+    * left in the middle of a transaction are rolled back first, broken
+    * connections are closed instead of being reused.
+    *
+    * @param pc the connection obtained from borrow()
+    */
+   public void release (PooledConnection pc) {
+      if (pc == null)
+         return;
+      try{
+         Connection c = pc.getConnection();
+         if (c.isClosed()){
+            discard(pc);
+            return;
+         }//end if
+         if (!c.getAutoCommit()){
+            c.rollback();
+            c.setAutoCommit(true);
+         }//end if
+         if (this._closed){
+            discard(pc);
+            return;
+         }//end if
+         pc.markReturned();
+         this._idle.addFirst(pc);
+      }catch (SQLException e){
+         this._invalidated.incrementAndGet();
+         discard(pc);
+      }finally{
+         this._permits.release();
+      }//end try
+   }//end release
+
+   /**
+    * Method to close every idle connection and stop the evictor. Borrowed
+    * connections are closed as they are released.
+    */
+   public void close () {
+      this._closed = true;
+      this._evictor.shutdownNow();
+      PooledConnection pc;
+      while ((pc = this._idle.pollFirst()) != null)
+         discard(pc);
+   }//end close
+
+   /**
+    * @return where the physical connections come from, for the rare
+    *         connection that is held for good and must not use up the pool
+    */
+   public DataSource getDataSource () {
+      return this._dataSource;
+   }//end getDataSource
+
+   public int getMinSize () {
+      return this._minSize;
+   }//end getMinSize
+
+   public int getMaxSize () {
+      return this._maxSize;
+   }//end getMaxSize
+
+   /**
+    * @return a one line summary of the pool state and borrow metrics
+    */
+   public String getStats () {
+      long borrows = this._borrows.get();
+      double avgWaitMs = borrows == 0 ? 0.0
+         : this._borrowWaitNanos.get() / (double) borrows / 1000000.0;
+      return String.format(
+         "pool open=%d idle=%d max=%d borrows=%d timeouts=%d avgWait=%.3fms maxWait=%.3fms created=%d evicted=%d invalidated=%d",
+         this._open.get(), this._idle.size(), this._maxSize, borrows,
+         this._borrowTimeouts.get(), avgWaitMs,
+         this._maxBorrowWaitNanos.get() / 1000000.0, this._created.get(),
+         this._evicted.get(), this._invalidated.get());
+   }//end getStats
+
+   public long getBorrowTimeouts () {
+      return this._borrowTimeouts.get();
+   }//end getBorrowTimeouts
+
+   private PooledConnection open () throws SQLException {
+      Connection c = this._dataSource.getConnection();
+      this._open.incrementAndGet();
+      this._created.incrementAndGet();
+      return new PooledConnection(c, this._statementCacheSize);
+   }//end open
+
+   private void discard (PooledConnection pc) {
+      this._open.decrementAndGet();
+      pc.closeQuietly();
+   }//end discard
+
+   private boolean isValid (PooledConnection pc) {
+      try{
+         return pc.getConnection().isValid(2);
+      }catch (SQLException e){
+         return false;
+      }//end try
+   }//end isValid
+
+   /*
+    * Closes connections that have been idle longer than the idle timeout
+    * while more than minSize connections are open, and opens new ones
+    * while fewer are, after broken ones were dropped. The oldest
+    * connections sit at the tail of the deque.
+    */
+   private void evictIdle () {
+      long now = System.nanoTime();
+      for (Iterator<PooledConnection> it = this._idle.descendingIterator(); it.hasNext();){
+         PooledConnection pc = it.next();
+         if (this._open.get() <= this._minSize)
+            break;
+         if (now - pc.getLastReturned() < this._idleTimeoutNanos)
+            break;
+         if (this._idle.removeLastOccurrence(pc)){
+            this._evicted.incrementAndGet();
+            discard(pc);
+         }//end if
+      }//end for
+      try{
+         while (!this._closed && this._open.get() < this._minSize){
+            PooledConnection pc = open();
+            pc.markReturned();
+            this._idle.addLast(pc);
+            // close() may have emptied the deque meanwhile
+            if (this._closed && this._idle.removeLastOccurrence(pc))
+               discard(pc);
+         }//end while
+      }catch (SQLException e){
+         // the database is away, the next run tries again
+      }//end try
+   }//end evictIdle
+
+}//end ConnectionPool
@@ -0,0 +1,141 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class keeps a copy of the unpaid orders of the last day, the rows
+ * ViewCurrentOrder shows, and brings it up to date by reading only the
+ * orders changed since the last refresh instead of the whole day again.
+ *
+ * Every write to Orders sets Orders.updatedAt to NOW(), which is indexed.
+ * A refresh reads the orders whose updatedAt is at or after the
+ * watermark, replaces them in the copy, drops the ones that were paid and
+ * the ones received more than a day ago, and moves the watermark to the
+ * database time of the refresh. NOW() is the start of the writing
+ * transaction, so a change that commits a little after a refresh can
+ * carry an updatedAt before it; the watermark is therefore kept an
+ * overlap margin (cafe.currentOrders.overlapMs, 10 seconds by default)
+ * behind, and orders read twice are simply replaced again.
+ *
+ * Orders deleted from the database are not noticed until reset().
+ *
+ */
+public class CurrentOrders {
+
+   // the first column of both queries is the database time of the read,
+   // the outer join returns it even when no order matches
+   private static final String SELECT =
+      "SELECT LOCALTIMESTAMP, O.orderid, O.login, O.paid, O.timeStampRecieved, O.total "
+      + "FROM (VALUES (1)) AS N(x) LEFT JOIN Orders O ON ";
+   private static final String SELECT_ALL = SELECT
+      + "O.paid = false AND O.timeStampRecieved >= LOCALTIMESTAMP - '1 day'::INTERVAL";
+   private static final String SELECT_CHANGED = SELECT + "O.updatedAt >= ?";
+
+   // one order as read, laid out like KitchenBoard.ORDER_COLUMNS
+   private static final class Row {
+      Timestamp asOf;
+      int orderid = -1;
+      // paid = false, the orders ViewCurrentOrder shows
+      boolean unpaid;
+      LocalDateTime received;
+      String[] columns;
+   }//end Row
+
+   // the instance the orders are read through
+   private final Cafe _esql;
+
+   // how far behind the last read the next one starts
+   private final long _overlapMs;
+
+   // orderid -> row, in orderid order; guarded by this
+   private final TreeMap<Integer, Row> _orders = new TreeMap<Integer, Row>();
+
+   // changes at or after this are read next, null before the first read
+   private Timestamp _watermark = null;
+
+   /**
+    * Creates a new, empty copy; the first refresh reads the whole day
+    *
+    * @param esql the instance the orders are read through
+    * @param overlapMs how far behind the last read the next one starts
+    */
+   public CurrentOrders (Cafe esql, long overlapMs) {
+      this._esql = esql;
+      this._overlapMs = Math.max(0, overlapMs);
+   }//end CurrentOrders
+
+   /**
+    * Method to bring the copy up to date, in one round trip.
+    *
+    * @return the rows of the unpaid orders of the last day, by orderid
+    * @throws java.sql.SQLException when the orders cannot be read
+    */
+   public synchronized List<String[]> refresh () throws SQLException {
+      List<Row> rows = this._watermark == null
+         ? this._esql.executeQueryAndMap(SELECT_ALL, CurrentOrders::toRow)
+         : this._esql.executeQueryAndMap(SELECT_CHANGED, CurrentOrders::toRow, this._watermark);
+      Timestamp asOf = rows.get(0).asOf;
+      for (Row row : rows){
+         if (row.orderid < 0)
+            continue;
+         if (row.unpaid)
+            this._orders.put(row.orderid, row);
+         else
+            this._orders.remove(row.orderid);
+      }//end for
+
+      LocalDateTime oldest = asOf.toLocalDateTime().minusDays(1);
+      List<String[]> current = new ArrayList<String[]>(this._orders.size());
+      for (Iterator<Map.Entry<Integer, Row>> it = this._orders.entrySet().iterator(); it.hasNext();){
+         Row row = it.next().getValue();
+         if (row.received.isBefore(oldest))
+            it.remove();
+         else
+            current.add(row.columns);
+      }//end for
+      this._watermark = new Timestamp(asOf.getTime() - this._overlapMs);
+      return current;
+   }//end refresh
+
+   /**
+    * Method to forget the copy, so the next refresh reads the whole day.
+    */
+   public synchronized void reset () {
+      this._orders.clear();
+      this._watermark = null;
+   }//end reset
+
+   private static Row toRow (ResultSet rs) throws SQLException {
+      Row row = new Row();
+      row.asOf = rs.getTimestamp(1);
+      int orderid = rs.getInt(2);
+      if (rs.wasNull())
+         return row;
+      row.orderid = orderid;
+      row.unpaid = !rs.getBoolean(4) && !rs.wasNull();
+      row.received = rs.getTimestamp(5).toLocalDateTime();
+      String login = rs.getString(3);
+      row.columns = new String[]{ Integer.toString(orderid), login == null ? null : login.stripTrailing(),
+                                  rs.getString(5), rs.getString(6) };
+      return row;
+   }//end toRow
+
+}//end CurrentOrders
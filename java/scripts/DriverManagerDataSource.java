@@ -0,0 +1,83 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * This class defines a minimal DataSource that opens physical connections
+ * through the DriverManager. It is what the ConnectionPool draws from when
+ * no other DataSource is supplied.
+ *
+ */
+public class DriverManagerDataSource implements DataSource {
+
+   // JDBC url every physical connection is opened against
+   private final String _url;
+
+   /**
+    * Creates a new DataSource for the given connection URL
+    *
+    * @param url the JDBC connection URL
+    */
+   public DriverManagerDataSource (String url) {
+      this._url = url;
+   }//end DriverManagerDataSource
+
+   public String getUrl () {
+      return this._url;
+   }//end getUrl
+
+   public Connection getConnection () throws SQLException {
+      return DriverManager.getConnection(this._url);
+   }//end getConnection
+
+   public Connection getConnection (String user, String password) throws SQLException {
+      return DriverManager.getConnection(this._url, user, password);
+   }//end getConnection
+
+   public PrintWriter getLogWriter () {
+      return DriverManager.getLogWriter();
+   }//end getLogWriter
+
+   public void setLogWriter (PrintWriter out) {
+      DriverManager.setLogWriter(out);
+   }//end setLogWriter
+
+   public void setLoginTimeout (int seconds) {
+      DriverManager.setLoginTimeout(seconds);
+   }//end setLoginTimeout
+
+   public int getLoginTimeout () {
+      return DriverManager.getLoginTimeout();
+   }//end getLoginTimeout
+
+   public Logger getParentLogger () throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException("getParentLogger");
+   }//end getParentLogger
+
+   public <T> T unwrap (Class<T> iface) throws SQLException {
+      if (iface.isInstance(this))
+         return iface.cast(this);
+      throw new SQLException("Not a wrapper for " + iface.getName());
+   }//end unwrap
+
+   public boolean isWrapperFor (Class<?> iface) {
+      return iface.isInstance(this);
+   }//end isWrapperFor
+
+}//end DriverManagerDataSource
@@ -0,0 +1,431 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the open orders and their ItemStatus rows in memory,
+ * keyed by orderid, so that order and item status lookups of customers
+ * and staff need no round trip to the database. An order is open while
+ * it is unpaid or any of its items is not Finished; every other order is
+ * left to the database.
+ *
+ * The board is loaded once at startup and kept up to date by the
+ * OrderService, which writes every change through to it right after
+ * writing the database. Each order is an immutable snapshot replaced as
+ * a whole, so readers never see half an update. Item statuses only move
+ * forward, so when two changes of the same order reach the board out of
+ * order the one furthest along wins.
+ *
+ * Changes made by other processes reach the board only through the
+ * OrderEventBus in postgres mode (cafe.events=postgres): the board reads
+ * every order another process changed again, and the whole board again
+ * whenever notifications may have been lost. Cafe therefore turns the
+ * board on by default only in that mode; cafe.kitchenBoard=true turns it
+ * on in any mode, for a process that is the only one writing orders.
+ *
+ */
+public class KitchenBoard implements OrderEventBus.RemoteListener {
+
+   /**
+    * Column labels of the rows itemRows() and orderRows() return, the
+    * same as those of SELECT * FROM ItemStatus and of ViewCurrentOrder.
+    */
+   public static final String[] ITEM_COLUMNS = { "orderid", "itemname", "amount", "lastupdated", "status", "comments" };
+   public static final String[] ORDER_COLUMNS = { "orderid", "login", "timestamprecieved", "total" };
+
+   private static final String SELECT =
+      "SELECT O.orderid, O.login, O.paid, O.timeStampRecieved, O.total, "
+      + "I.itemName, I.amount, I.lastUpdated, I.status, I.comments "
+      + "FROM Orders O LEFT JOIN ItemStatus I ON I.orderid = O.orderid ";
+   private static final String SELECT_OPEN = SELECT
+      + "WHERE O.paid = false OR O.orderid IN (SELECT P.orderid FROM ItemStatus P WHERE P.status <> 'Finished') "
+      + "ORDER BY O.orderid";
+   private static final String SELECT_ONE = SELECT + "WHERE O.orderid = ?";
+
+   /**
+    * One ItemStatus row.
+    */
+   public static final class Item {
+      private final String _name;
+      private final int _amount;
+      private final String _lastUpdated;
+      private final String _status;
+      private final String _comments;
+
+      Item (String name, int amount, String lastUpdated, String status, String comments) {
+         this._name = name;
+         this._amount = amount;
+         this._lastUpdated = lastUpdated;
+         this._status = status;
+         this._comments = comments;
+      }//end Item
+
+      public String getName () {
+         return this._name;
+      }//end getName
+
+      public int getAmount () {
+         return this._amount;
+      }//end getAmount
+
+      public String getStatus () {
+         return this._status;
+      }//end getStatus
+
+      private Item withStatus (String status, String lastUpdated) {
+         return new Item(this._name, this._amount, lastUpdated, status, this._comments);
+      }//end withStatus
+   }//end Item
+
+   /**
+    * One order with its items, never changed once on the board.
+    */
+   public static final class Order {
+      private final int _orderid;
+      private final String _login;
+      private final boolean _paid;
+      private final String _received;
+      private final LocalDateTime _receivedAt;
+      private final double _total;
+      private final List<Item> _items;
+
+      Order (int orderid, String login, boolean paid, String received, double total, List<Item> items) {
+         this._orderid = orderid;
+         this._login = login == null ? "" : login;
+         this._paid = paid;
+         this._received = received;
+         this._receivedAt = Timestamp.valueOf(received).toLocalDateTime();
+         this._total = total;
+         this._items = Collections.unmodifiableList(items);
+      }//end Order
+
+      public int getOrderid () {
+         return this._orderid;
+      }//end getOrderid
+
+      public String getLogin () {
+         return this._login;
+      }//end getLogin
+
+      public boolean isPaid () {
+         return this._paid;
+      }//end isPaid
+
+      public List<Item> getItems () {
+         return this._items;
+      }//end getItems
+
+      /**
+       * @param itemName the item name, trailing blanks are ignored
+       * @return the item or null when it is not on the order
+       */
+      public Item getItem (String itemName) {
+         String key = itemName.stripTrailing();
+         for (Item item : this._items)
+            if (item._name.equals(key))
+               return item;
+         return null;
+      }//end getItem
+
+      /**
+       * @param login a login, trailing blanks are ignored
+       * @return true when that user placed the order
+       */
+      public boolean isPlacedBy (String login) {
+         return this._login.equals(login.stripTrailing());
+      }//end isPlacedBy
+
+      // still unpaid or still in the kitchen
+      private boolean isOpen () {
+         if (!this._paid)
+            return true;
+         for (Item item : this._items)
+            if (!"Finished".equals(item._status))
+               return true;
+         return false;
+      }//end isOpen
+
+      private Order with (boolean paid, List<Item> items) {
+         return new Order(this._orderid, this._login, paid, this._received, this._total, items);
+      }//end with
+   }//end Order
+
+   // one row of SELECT, an order joined with one of its items or none
+   private static final class Row {
+      Order order;
+      Item item;
+   }//end Row
+
+   // the instance the orders are read through
+   private final Cafe _esql;
+
+   // orderid -> open order
+   private final ConcurrentHashMap<Integer, Order> _orders = new ConcurrentHashMap<Integer, Order>();
+
+   public KitchenBoard (Cafe esql) {
+      this._esql = esql;
+   }//end KitchenBoard
+
+   /**
+    * Method to replace the board with the open orders in the database,
+    * read in a single round trip.
+    *
+    * @throws java.sql.SQLException when the orders cannot be read
+    */
+   public void reload () throws SQLException {
+      Map<Integer, Order> fresh = group(this._esql.executeQueryAndMap(SELECT_OPEN, KitchenBoard::toRow));
+      this._orders.keySet().retainAll(fresh.keySet());
+      this._orders.putAll(fresh);
+   }//end reload
+
+   /**
+    * Method to re-read one order after it was written. The order is
+    * dropped from the board when it is no longer open. Called inside the
+    * transaction that wrote the order, it sees the uncommitted rows.
+    *
+    * @param orderid the order that changed
+    * @throws java.sql.SQLException when the order cannot be read
+    */
+   public void refresh (int orderid) throws SQLException {
+      Order order = group(this._esql.executeQueryAndMap(SELECT_ONE, KitchenBoard::toRow, orderid)).get(orderid);
+      if (order == null){
+         this._orders.remove(orderid);
+         return;
+      }//end if
+      merge(order);
+   }//end refresh
+
+   /**
+    * Method to read again every order another process changed.
+    *
+    * @param events what the other process published
+    */
+   public void changed (List<OrderEvent> events) {
+      Set<Integer> orderids = new LinkedHashSet<Integer>();
+      for (OrderEvent event : events)
+         orderids.add(event.getOrderid());
+      try{
+         for (int orderid : orderids)
+            refresh(orderid);
+      }catch (SQLException e){
+         System.err.println("kitchen board could not read a changed order: " + e.getMessage());
+         missed();
+      }//end try
+   }//end changed
+
+   /**
+    * Method to read the whole board again after changes of other
+    * processes may have been missed.
+    */
+   public void missed () {
+      try{
+         reload();
+      }catch (SQLException e){
+         System.err.println("kitchen board could not be reloaded: " + e.getMessage());
+      }//end try
+   }//end missed
+
+   /**
+    * Method to add an order that was just placed. Every item starts as
+    * Has Not Started and was last updated when the order was received.
+    *
+    * @param orderid the new order
+    * @param login the user who placed it
+    * @param received Orders.timeStampRecieved as text
+    * @param total Orders.total
+    * @param cart the items of the order
+    */
+   public void add (int orderid, String login, String received, double total, OrderCart cart) {
+      List<Item> items = new ArrayList<Item>(cart.size());
+      for (int line = 0; line < cart.size(); ++line)
+         items.add(new Item(cart.getName(line), cart.getAmount(line), received, "Has Not Started", cart.getComment(line)));
+      merge(new Order(orderid, login.stripTrailing(), false, received, total, items));
+   }//end add
+
+   /**
+    * Method to mark an order paid. It leaves the board when all of its
+    * items are finished.
+    *
+    * @param orderid the order
+    */
+   public void markPaid (int orderid) {
+      this._orders.computeIfPresent(orderid, (id, old) -> open(old.with(true, old._items)));
+   }//end markPaid
+
+   /**
+    * Method to apply item status changes returned by an UPDATE of
+    * ItemStatus. Changes to orders not on the board are read again.
+    *
+    * @param changed rows of orderid, itemName, status and lastUpdated
+    * @throws java.sql.SQLException when a missing order cannot be read
+    */
+   public void applyStatus (ResultTable changed) throws SQLException {
+      List<Integer> missing = new ArrayList<Integer>();
+      for (int r = 0; r < changed.getRowCount(); ++r){
+         final String itemName = changed.getString(r, 1);
+         final String status = changed.getString(r, 2).stripTrailing();
+         final String lastUpdated = changed.getString(r, 3);
+         int orderid = changed.getInt(r, 0);
+         Order order = this._orders.computeIfPresent(orderid, (id, old) -> {
+            List<Item> items = new ArrayList<Item>(old._items);
+            for (int i = 0; i < items.size(); ++i)
+               if (items.get(i)._name.equals(itemName))
+                  items.set(i, furthest(items.get(i), items.get(i).withStatus(status, lastUpdated)));
+            return open(old.with(old._paid, items));
+         });
+         if (order == null && !missing.contains(orderid))
+            missing.add(orderid);
+      }//end for
+      for (int orderid : missing)
+         refresh(orderid);
+   }//end applyStatus
+
+   /**
+    * @param orderid the order
+    * @return the order, or null when it is not open
+    */
+   public Order get (int orderid) {
+      return this._orders.get(orderid);
+   }//end get
+
+   /**
+    * @param since the oldest timeStampRecieved to include
+    * @return the unpaid orders received since then, by orderid
+    */
+   public List<Order> unpaidSince (LocalDateTime since) {
+      List<Order> orders = new ArrayList<Order>();
+      for (Order order : this._orders.values())
+         if (!order._paid && !order._receivedAt.isBefore(since))
+            orders.add(order);
+      orders.sort((a, b) -> Integer.compare(a._orderid, b._orderid));
+      return orders;
+   }//end unpaidSince
+
+   public int size () {
+      return this._orders.size();
+   }//end size
+
+   /**
+    * @param order an order
+    * @return its items laid out like ITEM_COLUMNS
+    */
+   public static List<String[]> itemRows (Order order) {
+      List<String[]> rows = new ArrayList<String[]>(order._items.size());
+      for (Item item : order._items)
+         rows.add(new String[]{ Integer.toString(order._orderid), item._name, Integer.toString(item._amount),
+                                item._lastUpdated, item._status, item._comments });
+      return rows;
+   }//end itemRows
+
+   /**
+    * @param orders some orders
+    * @return the orders laid out like ORDER_COLUMNS
+    */
+   public static List<String[]> orderRows (List<Order> orders) {
+      List<String[]> rows = new ArrayList<String[]>(orders.size());
+      for (Order order : orders)
+         rows.add(new String[]{ Integer.toString(order._orderid), order._login, order._received, real(order._total) });
+      return rows;
+   }//end orderRows
+
+   /*
+    * Puts a fresh copy of an order on the board. Amounts, comments and
+    * the total are taken from the copy; the paid flag and every item
+    * status are the furthest along of the copy and the board.
+    */
+   private void merge (final Order fresh) {
+      this._orders.compute(fresh._orderid, (id, old) -> {
+         if (old == null)
+            return open(fresh);
+         List<Item> items = new ArrayList<Item>(fresh._items.size());
+         for (Item item : fresh._items){
+            Item seen = old.getItem(item._name);
+            items.add(seen == null ? item : furthest(item, seen));
+         }//end for
+         return open(fresh.with(fresh._paid || old._paid, items));
+      });
+   }//end merge
+
+   // the order, or null to drop it from the board
+   private static Order open (Order order) {
+      return order.isOpen() ? order : null;
+   }//end open
+
+   // of two versions of the same item, the one with the later status
+   private static Item furthest (Item a, Item b) {
+      return rank(b._status) > rank(a._status) ? new Item(a._name, a._amount, b._lastUpdated, b._status, a._comments) : a;
+   }//end furthest
+
+   private static int rank (String status) {
+      if ("Has Not Started".equals(status))
+         return 0;
+      if ("Started".equals(status))
+         return 1;
+      if ("Finished".equals(status))
+         return 2;
+      return -1;
+   }//end rank
+
+   // real columns print without a trailing .0, as Postgres does
+   private static String real (double value) {
+      float f = (float) value;
+      return f == Math.rint(f) && Math.abs(f) < 1e7f ? Long.toString((long) f) : Float.toString(f);
+   }//end real
+
+   // joined rows -> orders with their items, rows of an order are adjacent
+   private static Map<Integer, Order> group (List<Row> rows) {
+      Map<Integer, Order> orders = new HashMap<Integer, Order>();
+      Order order = null;
+      List<Item> items = null;
+      for (Row row : rows){
+         if (order == null || order._orderid != row.order._orderid){
+            if (order != null)
+               orders.put(order._orderid, order.with(order._paid, items));
+            order = row.order;
+            items = new ArrayList<Item>();
+         }//end if
+         if (row.item != null)
+            items.add(row.item);
+      }//end for
+      if (order != null)
+         orders.put(order._orderid, order.with(order._paid, items));
+      return orders;
+   }//end group
+
+   private static Row toRow (ResultSet rs) throws SQLException {
+      Row row = new Row();
+      row.order = new Order(rs.getInt(1), trim(rs.getString(2)), rs.getBoolean(3), rs.getString(4),
+                            rs.getDouble(5), Collections.<Item>emptyList());
+      String itemName = rs.getString(6);
+      if (itemName != null)
+         row.item = new Item(itemName.stripTrailing(), rs.getInt(7), rs.getString(8),
+                             trim(rs.getString(9)), trim(rs.getString(10)));
+      return row;
+   }//end toRow
+
+   private static String trim (String value) {
+      return value == null ? null : value.stripTrailing();
+   }//end trim
+
+}//end KitchenBoard
@@ -0,0 +1,125 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts latencies in log-linear buckets: every power of two
+ * is split into 16 equal buckets, so a percentile read back is within
+ * 1/16 of the true value from one nanosecond up to several hours.
+ *
+ * Recording is a handful of atomic increments on a fixed array, it takes
+ * no lock and allocates nothing, so it is safe to call on every
+ * statement from any number of threads. Reading is not atomic with
+ * respect to recording; a snapshot taken under load may be off by the
+ * few values recorded while it was read.
+ *
+ */
+public class LatencyHistogram {
+
+   // 2^SUB_BITS linear buckets per power of two
+   private static final int SUB_BITS = 4;
+   private static final int SUB_COUNT = 1 << SUB_BITS;
+
+   // highest power of two tracked, larger values land in the last bucket
+   private static final int MAX_EXPONENT = 44;
+
+   private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong _count = new AtomicLong();
+   private final AtomicLong _sum = new AtomicLong();
+   private final AtomicLong _max = new AtomicLong();
+
+   /**
+    * Method to count one latency.
+    *
+    * @param nanos the latency in nanoseconds, negative values count as 0
+    */
+   public void record (long nanos) {
+      if (nanos < 0)
+         nanos = 0;
+      this._counts.incrementAndGet(bucket(nanos));
+      this._count.incrementAndGet();
+      this._sum.addAndGet(nanos);
+      if (nanos > this._max.get())
+         this._max.accumulateAndGet(nanos, Math::max);
+   }//end record
+
+   public long getCount () {
+      return this._count.get();
+   }//end getCount
+
+   public long getMaxNanos () {
+      return this._max.get();
+   }//end getMaxNanos
+
+   public double getMeanNanos () {
+      long count = this._count.get();
+      return count == 0 ? 0.0 : this._sum.get() / (double) count;
+   }//end getMeanNanos
+
+   /**
+    * @param p the fraction of values at or below the result, e.g. 0.99
+    * @return the latency in nanoseconds at that percentile, the middle of
+    *         the bucket it falls in, or 0 when nothing was recorded
+    */
+   public long getPercentileNanos (double p) {
+      long count = this._count.get();
+      if (count == 0)
+         return 0;
+      long rank = Math.max(1, (long) Math.ceil(p * count));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i){
+         seen += this._counts.get(i);
+         if (seen >= rank)
+            return Math.min(middle(i), this._max.get());
+      }//end for
+      return this._max.get();
+   }//end getPercentileNanos
+
+   /**
+    * Method to forget every recorded value.
+    */
+   public void reset () {
+      for (int i = 0; i < BUCKETS; ++i)
+         this._counts.set(i, 0);
+      this._count.set(0);
+      this._sum.set(0);
+      this._max.set(0);
+   }//end reset
+
+   /*
+    * Values below SUB_COUNT get a bucket each; above that the exponent
+    * picks the group and the next SUB_BITS bits the bucket in it.
+    */
+   private static int bucket (long nanos) {
+      if (nanos < SUB_COUNT)
+         return (int) nanos;
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      if (exponent > MAX_EXPONENT)
+         return BUCKETS - 1;
+      int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+      return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+   }//end bucket
+
+   private static long middle (int bucket) {
+      if (bucket < SUB_COUNT)
+         return bucket;
+      int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+      int sub = bucket % SUB_COUNT;
+      long width = 1L << (exponent - SUB_BITS);
+      return (1L << exponent) + sub * width + width / 2;
+   }//end middle
+
+}//end LatencyHistogram
@@ -0,0 +1,169 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps the whole Menu table in memory, keyed by item name, so
+ * that item validation and pricing while taking an order need no round
+ * trip to the database. It is loaded once at startup and kept up to date
+ * by UpdateMenu, which refreshes the affected rows right after writing
+ * them (write-through).
+ *
+ * Every item name is also given a small int id the first time it is asked
+ * for, counting up from 0, so carts can index their lines by item in a
+ * plain array. Ids are never reused while the process runs, not even for
+ * deleted items.
+ *
+ * Unless cafe.menuSearch is false the cache also keeps a MenuSearchIndex
+ * of its rows, changed at the same points as the cache itself.
+ *
+ */
+public class MenuCache {
+
+   private static final String SELECT_ALL =
+      "SELECT itemName, type, price, description, imageURL FROM Menu";
+   private static final String SELECT_ONE =
+      "SELECT itemName, type, price, description, imageURL FROM Menu WHERE itemName = ?";
+
+   // the instance the menu is read through
+   private final Cafe _esql;
+
+   // trimmed item name -> menu row
+   private final ConcurrentHashMap<String, MenuItem> _items = new ConcurrentHashMap<String, MenuItem>();
+
+   // trimmed item name -> dense id
+   private final ConcurrentHashMap<String, Integer> _ids = new ConcurrentHashMap<String, Integer>();
+   private final AtomicInteger _nextId = new AtomicInteger();
+
+   // the cached rows by text, null when cafe.menuSearch is false
+   private final MenuSearchIndex _search;
+
+   public MenuCache (Cafe esql) {
+      this._esql = esql;
+      this._search = "false".equals(System.getProperty("cafe.menuSearch")) ? null : new MenuSearchIndex();
+   }//end MenuCache
+
+   /**
+    * Method to replace the cached menu with the current Menu table.
+    *
+    * @throws java.sql.SQLException when the menu cannot be read
+    */
+   public void reload () throws SQLException {
+      List<MenuItem> rows = this._esql.executeQueryAndMap(SELECT_ALL, MenuCache::toItem);
+      ConcurrentHashMap<String, MenuItem> fresh = new ConcurrentHashMap<String, MenuItem>();
+      for (MenuItem item : rows)
+         fresh.put(item.getName(), item);
+      this._items.keySet().retainAll(fresh.keySet());
+      this._items.putAll(fresh);
+      if (this._search != null)
+         this._search.rebuild(fresh.values());
+   }//end reload
+
+   /**
+    * Method to re-read one item after it was written. The item is dropped
+    * from the cache when it no longer exists.
+    *
+    * @param itemName the name of the item that changed
+    * @throws java.sql.SQLException when the item cannot be read
+    */
+   public void refresh (String itemName) throws SQLException {
+      List<MenuItem> rows = this._esql.executeQueryAndMap(SELECT_ONE, MenuCache::toItem, itemName);
+      if (rows.isEmpty()){
+         invalidate(itemName);
+         return;
+      }//end if
+      MenuItem item = rows.get(0);
+      this._items.put(item.getName(), item);
+      if (this._search != null)
+         this._search.put(item);
+   }//end refresh
+
+   /**
+    * Method to drop an item, used after it was deleted or renamed.
+    *
+    * @param itemName the name of the item
+    */
+   public void invalidate (String itemName) {
+      this._items.remove(key(itemName));
+      if (this._search != null)
+         this._search.remove(key(itemName));
+   }//end invalidate
+
+   /**
+    * @param itemName the item name as typed, trailing blanks are ignored
+    *        like they are for the char(50) column
+    * @return the menu row or null when there is no such item
+    */
+   public MenuItem get (String itemName) {
+      if (itemName == null)
+         return null;
+      return this._items.get(key(itemName));
+   }//end get
+
+   /**
+    * @return the search index of the cached rows, null when
+    *         cafe.menuSearch is false
+    */
+   public MenuSearchIndex getSearchIndex () {
+      return this._search;
+   }//end getSearchIndex
+
+   /**
+    * @param item a cached menu row
+    * @return the dense id of the item, the same for as long as the
+    *         process runs
+    */
+   public int idOf (MenuItem item) {
+      Integer id = this._ids.get(item.getName());
+      if (id == null)
+         id = this._ids.computeIfAbsent(item.getName(), name -> this._nextId.getAndIncrement());
+      return id;
+   }//end idOf
+
+   /**
+    * @return one more than the largest id handed out so far
+    */
+   public int idLimit () {
+      return this._nextId.get();
+   }//end idLimit
+
+   /**
+    * @return a live view of every cached menu row
+    */
+   public Collection<MenuItem> items () {
+      return this._items.values();
+   }//end items
+
+   public int size () {
+      return this._items.size();
+   }//end size
+
+   private static String key (String itemName) {
+      return itemName.stripTrailing();
+   }//end key
+
+   private static MenuItem toItem (ResultSet rs) throws SQLException {
+      return new MenuItem(key(rs.getString(1)), trim(rs.getString(2)),
+         rs.getDouble(3), trim(rs.getString(4)), trim(rs.getString(5)));
+   }//end toItem
+
+   private static String trim (String value) {
+      return value == null ? null : value.stripTrailing();
+   }//end trim
+
+}//end MenuCache
@@ -0,0 +1,54 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+/**
+ * This class holds one row of the Menu table. The char(n) columns are
+ * stored without their blank padding.
+ *
+ */
+public class MenuItem {
+
+   private final String _name;
+   private final String _type;
+   private final double _price;
+   private final String _description;
+   private final String _imageURL;
+
+   public MenuItem (String name, String type, double price, String description, String imageURL) {
+      this._name = name;
+      this._type = type;
+      this._price = price;
+      this._description = description;
+      this._imageURL = imageURL;
+   }//end MenuItem
+
+   public String getName () {
+      return this._name;
+   }//end getName
+
+   public String getType () {
+      return this._type;
+   }//end getType
+
+   public double getPrice () {
+      return this._price;
+   }//end getPrice
+
+   public String getDescription () {
+      return this._description;
+   }//end getDescription
+
+   public String getImageURL () {
+      return this._imageURL;
+   }//end getImageURL
+
+}//end MenuItem
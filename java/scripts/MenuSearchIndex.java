@@ -0,0 +1,264 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class finds menu items whose name, type or description contains a
+ * piece of text, ignoring case, without asking the database. It backs
+ * BrowseMenuName and BrowseMenuType and is kept up to date by the
+ * MenuCache, which puts and removes items here whenever it does itself.
+ *
+ * Every field is lower cased and cut into all of its pieces of one, two
+ * and three characters (n-grams); each piece points to the items that
+ * contain it. A search for up to three characters is one lookup. A longer
+ * one looks up each of its three character pieces and checks only the
+ * items under the rarest of them for the whole text.
+ *
+ * Results are ranked: an item whose field is the text comes first, then
+ * the ones where the field starts with it, then where a word of the field
+ * starts with it, then the rest; in a search over every field a match in
+ * the name beats one in the type, which beats one in the description.
+ * Items of the same rank are in name order.
+ *
+ * Searches share a read lock, so any number of them run at once; only
+ * the MenuCache's changes take the write lock.
+ *
+ */
+public class MenuSearchIndex {
+
+   /**
+    * The fields an item can be found by, in ranking order.
+    */
+   public enum Field { NAME, TYPE, DESCRIPTION }
+
+   private static final int GRAM = 3;
+
+   // ranks of a match, lower is better
+   private static final int EXACT = 0;
+   private static final int PREFIX = 1;
+   private static final int WORD = 2;
+   private static final int INSIDE = 3;
+
+   // one indexed item and its lower cased fields, by Field ordinal
+   private static final class Entry {
+      final MenuItem item;
+      final String[] text;
+
+      Entry (MenuItem item) {
+         this.item = item;
+         this.text = new String[]{ normalize(item.getName()), normalize(item.getType()),
+                                   normalize(item.getDescription()) };
+      }//end Entry
+   }//end Entry
+
+   // item name -> entry; guarded by _lock
+   private final HashMap<String, Entry> _entries = new HashMap<String, Entry>();
+
+   // per field, n-gram -> names of the items whose field contains it; guarded by _lock
+   private final List<HashMap<String, Set<String>>> _grams = new ArrayList<HashMap<String, Set<String>>>();
+
+   private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+
+   public MenuSearchIndex () {
+      for (int f = 0; f < Field.values().length; ++f)
+         this._grams.add(new HashMap<String, Set<String>>());
+   }//end MenuSearchIndex
+
+   /**
+    * Method to add an item, or replace the one with the same name.
+    *
+    * @param item the menu row as cached
+    */
+   public void put (MenuItem item) {
+      this._lock.writeLock().lock();
+      try{
+         remove(item.getName());
+         Entry entry = new Entry(item);
+         this._entries.put(item.getName(), entry);
+         for (int f = 0; f < entry.text.length; ++f)
+            for (String gram : grams(entry.text[f]))
+               this._grams.get(f).computeIfAbsent(gram, g -> new HashSet<String>()).add(item.getName());
+      }finally{
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end put
+
+   /**
+    * Method to remove an item.
+    *
+    * @param itemName the cached name of the item
+    */
+   public void remove (String itemName) {
+      this._lock.writeLock().lock();
+      try{
+         Entry entry = this._entries.remove(itemName);
+         if (entry == null)
+            return;
+         for (int f = 0; f < entry.text.length; ++f){
+            HashMap<String, Set<String>> grams = this._grams.get(f);
+            for (String gram : grams(entry.text[f])){
+               Set<String> names = grams.get(gram);
+               if (names != null && names.remove(itemName) && names.isEmpty())
+                  grams.remove(gram);
+            }//end for
+         }//end for
+      }finally{
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end remove
+
+   /**
+    * Method to replace everything with a new set of items.
+    *
+    * @param items the menu rows as cached
+    */
+   public void rebuild (Collection<MenuItem> items) {
+      this._lock.writeLock().lock();
+      try{
+         this._entries.clear();
+         for (HashMap<String, Set<String>> grams : this._grams)
+            grams.clear();
+         for (MenuItem item : items)
+            put(item);
+      }finally{
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end rebuild
+
+   /**
+    * Method to find the items whose field contains a text.
+    *
+    * @param text what to look for, case is ignored; empty finds every item
+    * @param field the field to look in
+    * @return the items found, best match first
+    */
+   public List<MenuItem> search (String text, Field field) {
+      return search(text, new Field[]{ field });
+   }//end search
+
+   /**
+    * Method to find the items whose name, type or description contains a
+    * text.
+    *
+    * @param text what to look for, case is ignored; empty finds every item
+    * @return the items found, best match first
+    */
+   public List<MenuItem> search (String text) {
+      return search(text, Field.values());
+   }//end search
+
+   public int size () {
+      this._lock.readLock().lock();
+      try{
+         return this._entries.size();
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end size
+
+   private List<MenuItem> search (String text, Field[] fields) {
+      String query = normalize(text);
+      this._lock.readLock().lock();
+      try{
+         return find(query, fields);
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end search
+
+   // the search itself, under the read lock
+   private List<MenuItem> find (String query, Field[] fields) {
+      if (query.isEmpty()){
+         List<MenuItem> all = new ArrayList<MenuItem>(this._entries.size());
+         for (Entry entry : this._entries.values())
+            all.add(entry.item);
+         all.sort((a, b) -> a.getName().compareTo(b.getName()));
+         return all;
+      }//end if
+      // name -> best rank * number of fields + field
+      HashMap<String, Integer> found = new HashMap<String, Integer>();
+      for (Field field : fields){
+         int f = field.ordinal();
+         for (String name : candidates(query, f)){
+            Entry entry = this._entries.get(name);
+            int rank = rank(entry.text[f], query);
+            if (rank < 0)
+               continue;
+            found.merge(name, rank * fields.length + f, Math::min);
+         }//end for
+      }//end for
+
+      List<String> names = new ArrayList<String>(found.keySet());
+      names.sort((a, b) -> {
+         int byRank = Integer.compare(found.get(a), found.get(b));
+         return byRank != 0 ? byRank : a.compareTo(b);
+      });
+      List<MenuItem> items = new ArrayList<MenuItem>(names.size());
+      for (String name : names)
+         items.add(this._entries.get(name).item);
+      return items;
+   }//end find
+
+   // names of the items that may contain the query in field f
+   private Collection<String> candidates (String query, int f) {
+      HashMap<String, Set<String>> grams = this._grams.get(f);
+      if (query.length() <= GRAM)
+         return grams.getOrDefault(query, Set.of());
+
+      // the items under the rarest piece, search() checks they contain the rest
+      Set<String> rarest = null;
+      for (int i = 0; i + GRAM <= query.length(); ++i){
+         Set<String> names = grams.get(query.substring(i, i + GRAM));
+         if (names == null)
+            return Set.of();
+         if (rarest == null || names.size() < rarest.size())
+            rarest = names;
+      }//end for
+      return rarest;
+   }//end candidates
+
+   // how well text matches the query, -1 when it does not contain it
+   private static int rank (String text, String query) {
+      int at = text.indexOf(query);
+      if (at < 0)
+         return -1;
+      if (at == 0)
+         return text.length() == query.length() ? EXACT : PREFIX;
+      for (; at > 0; at = text.indexOf(query, at + 1))
+         if (!Character.isLetterOrDigit(text.charAt(at - 1)))
+            return WORD;
+      return INSIDE;
+   }//end rank
+
+   // every distinct piece of one to GRAM characters
+   private static Set<String> grams (String text) {
+      Set<String> grams = new HashSet<String>();
+      for (int i = 0; i < text.length(); ++i)
+         for (int n = 1; n <= GRAM && i + n <= text.length(); ++n)
+            grams.add(text.substring(i, i + n));
+      return grams;
+   }//end grams
+
+   private static String normalize (String text) {
+      return text == null ? "" : text.strip().toLowerCase(Locale.ROOT);
+   }//end normalize
+
+}//end MenuSearchIndex
@@ -0,0 +1,185 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * This class collects the items of an order while it is being taken, for
+ * AddOrder and UpdateOrder alike, one line per menu item with its amount,
+ * price and comments.
+ *
+ * Lines are kept in parallel primitive arrays and found through the dense
+ * item ids of the MenuCache, so adding to a line costs an array lookup and
+ * allocates nothing however many units are ordered; only a new line or a
+ * new comment does. Money is counted in whole cents as a long, so the
+ * total is exact; getTotal() turns it into the value written to
+ * Orders.total. Each item is priced when it is first added to the cart.
+ *
+ * A cart is not thread-safe; it may be shared once it is no longer
+ * changed.
+ *
+ */
+public final class OrderCart {
+
+   private final MenuCache _menu;
+
+   // item id -> line + 1, 0 when the item is not in the cart
+   private int[] _lineOf;
+
+   // the lines, in the order their items were first added
+   private int[] _ids;
+   private String[] _names;
+   private int[] _amounts;
+   private long[] _unitCents;
+   private String[] _comments;
+   private int _lines = 0;
+
+   private long _totalCents = 0;
+
+   /**
+    * Creates a new, empty cart
+    *
+    * @param menu where items are checked and priced
+    */
+   public OrderCart (MenuCache menu) {
+      this._menu = menu;
+      this._lineOf = new int[Math.max(16, menu.idLimit())];
+      this._ids = new int[8];
+      this._names = new String[8];
+      this._amounts = new int[8];
+      this._unitCents = new long[8];
+      this._comments = new String[8];
+   }//end OrderCart
+
+   /**
+    * Method to add to the amount of an item. The comment is appended to
+    * the ones given before, separated by a backslash.
+    *
+    * @param itemName the item as typed
+    * @param amount how many to add, negative to take away, 0 is ignored
+    * @param comment the comment for this part of the item, or null
+    * @throws IllegalArgumentException when the item is not on the menu
+    * @throws ArithmeticException when the total no longer fits in a long
+    */
+   public void add (String itemName, int amount, String comment) {
+      if (amount == 0)
+         return;
+      MenuItem item = this._menu.get(itemName);
+      if (item == null)
+         throw new IllegalArgumentException("Sorry, we can't match the name of the item: " + itemName);
+      int id = this._menu.idOf(item);
+      if (id >= this._lineOf.length)
+         this._lineOf = Arrays.copyOf(this._lineOf, Math.max(id + 1, this._lineOf.length * 2));
+
+      int line = this._lineOf[id] - 1;
+      if (line < 0){
+         if (this._lines == this._ids.length)
+            grow();
+         line = this._lines++;
+         this._lineOf[id] = line + 1;
+         this._ids[line] = id;
+         this._names[line] = item.getName();
+         this._amounts[line] = 0;
+         this._unitCents[line] = Math.round(item.getPrice() * 100);
+         this._comments[line] = comment;
+      }else if (comment != null){
+         this._comments[line] = this._comments[line] == null ? comment : this._comments[line] + "\\" + comment;
+      }//end if
+      this._amounts[line] = Math.addExact(this._amounts[line], amount);
+      this._totalCents = Math.addExact(this._totalCents, Math.multiplyExact(this._unitCents[line], (long) amount));
+   }//end add
+
+   /**
+    * Method to empty the cart so it can take the next order.
+    */
+   public void clear () {
+      for (int line = 0; line < this._lines; ++line){
+         this._lineOf[this._ids[line]] = 0;
+         this._names[line] = null;
+         this._comments[line] = null;
+      }//end for
+      this._lines = 0;
+      this._totalCents = 0;
+   }//end clear
+
+   /**
+    * @return the number of lines, one per item
+    */
+   public int size () {
+      return this._lines;
+   }//end size
+
+   public boolean isEmpty () {
+      return this._lines == 0;
+   }//end isEmpty
+
+   /**
+    * @param line the line, from 0 to size() - 1
+    * @return the menu name of its item
+    */
+   public String getName (int line) {
+      check(line);
+      return this._names[line];
+   }//end getName
+
+   public int getAmount (int line) {
+      check(line);
+      return this._amounts[line];
+   }//end getAmount
+
+   /**
+    * @param line the line
+    * @return its comments, null when none were given
+    */
+   public String getComment (int line) {
+      check(line);
+      return this._comments[line];
+   }//end getComment
+
+   /**
+    * @param line the line
+    * @return its amount times the price of its item, in cents
+    */
+   public long getLineCents (int line) {
+      check(line);
+      return this._unitCents[line] * this._amounts[line];
+   }//end getLineCents
+
+   /**
+    * @return the sum of every line, in cents
+    */
+   public long getTotalCents () {
+      return this._totalCents;
+   }//end getTotalCents
+
+   /**
+    * @return the total in dollars, as written to Orders.total
+    */
+   public double getTotal () {
+      return this._totalCents / 100.0;
+   }//end getTotal
+
+   private void check (int line) {
+      if (line < 0 || line >= this._lines)
+         throw new IndexOutOfBoundsException("line " + line + " of " + this._lines);
+   }//end check
+
+   private void grow () {
+      int capacity = this._ids.length * 2;
+      this._ids = Arrays.copyOf(this._ids, capacity);
+      this._names = Arrays.copyOf(this._names, capacity);
+      this._amounts = Arrays.copyOf(this._amounts, capacity);
+      this._unitCents = Arrays.copyOf(this._unitCents, capacity);
+      this._comments = Arrays.copyOf(this._comments, capacity);
+   }//end grow
+
+}//end OrderCart
@@ -0,0 +1,128 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+/**
+ * This class defines one change to an order as published on the
+ * OrderEventBus: an order was placed, changed or paid, or one of its
+ * items moved to a new status. Events are immutable; the bus numbers
+ * them in the order it receives them.
+ *
+ */
+public final class OrderEvent {
+
+   public enum Type { PLACED, UPDATED, PAID, STATUS }
+
+   private final long _seq;
+   private final Type _type;
+   private final int _orderid;
+
+   // who placed or changed the order, null for PAID and STATUS
+   private final String _login;
+
+   // the item and its new status, null unless STATUS
+   private final String _itemName;
+   private final String _status;
+
+   /**
+    * Creates a new event, it is numbered when the bus takes it
+    *
+    * @param type what happened
+    * @param orderid the order it happened to
+    * @param login the user who placed or changed the order, or null
+    * @param itemName the item that changed status, or null
+    * @param status the new status of that item, or null
+    */
+   public OrderEvent (Type type, int orderid, String login, String itemName, String status) {
+      this(0, type, orderid, login, itemName, status);
+   }//end OrderEvent
+
+   private OrderEvent (long seq, Type type, int orderid, String login, String itemName, String status) {
+      this._seq = seq;
+      this._type = type;
+      this._orderid = orderid;
+      this._login = login == null ? null : login.stripTrailing();
+      this._itemName = itemName == null ? null : itemName.stripTrailing();
+      this._status = status == null ? null : status.stripTrailing();
+   }//end OrderEvent
+
+   /**
+    * @return the number the bus gave the event, 0 before it was published
+    */
+   public long getSeq () {
+      return this._seq;
+   }//end getSeq
+
+   public Type getType () {
+      return this._type;
+   }//end getType
+
+   public int getOrderid () {
+      return this._orderid;
+   }//end getOrderid
+
+   public String getLogin () {
+      return this._login;
+   }//end getLogin
+
+   public String getItemName () {
+      return this._itemName;
+   }//end getItemName
+
+   public String getStatus () {
+      return this._status;
+   }//end getStatus
+
+   OrderEvent withSeq (long seq) {
+      return new OrderEvent(seq, this._type, this._orderid, this._login, this._itemName, this._status);
+   }//end withSeq
+
+   /**
+    * @return the event as one line of tab separated fields, the payload
+    *         of its NOTIFY
+    */
+   String encode () {
+      return this._type + "\t" + this._orderid + "\t" + field(this._login) + "\t"
+         + field(this._itemName) + "\t" + field(this._status);
+   }//end encode
+
+   /**
+    * @param payload a line made by encode()
+    * @return the event, not numbered yet
+    * @throws IllegalArgumentException when the line is not an event
+    */
+   static OrderEvent decode (String payload) {
+      String[] f = payload.split("\t", -1);
+      if (f.length != 5)
+         throw new IllegalArgumentException("not an order event: " + payload);
+      return new OrderEvent(Type.valueOf(f[0]), Integer.parseInt(f[1]),
+         value(f[2]), value(f[3]), value(f[4]));
+   }//end decode
+
+   public String toString () {
+      StringBuilder sb = new StringBuilder();
+      sb.append(this._seq).append(' ').append(this._type).append(" order ").append(this._orderid);
+      if (this._login != null)
+         sb.append(" by ").append(this._login);
+      if (this._itemName != null)
+         sb.append(": ").append(this._itemName).append(" -> ").append(this._status);
+      return sb.toString();
+   }//end toString
+
+   private static String field (String value) {
+      return value == null ? "" : value.replace('\t', ' ');
+   }//end field
+
+   private static String value (String field) {
+      return field.isEmpty() ? null : field;
+   }//end value
+
+}//end OrderEvent
@@ -0,0 +1,350 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class carries the changes OrderService makes to orders to anyone
+ * who wants to follow them, so staff see new orders as they arrive
+ * instead of running ViewCurrentOrder over and over.
+ *
+ * Events are numbered and kept in a ring of the last few thousand. A
+ * reader remembers the number of the last event it saw and asks for the
+ * ones after it with since(), which waits until there are some; any
+ * number of readers can follow the bus at their own pace without
+ * registering. A reader that falls more than the ring behind sees a gap
+ * in the numbers and should read the full view again. A reader ahead of
+ * the bus, for example one that followed it before a restart, is treated
+ * as up to date. Waiting readers park on a lock condition rather than a
+ * monitor, so on virtual threads they do not hold a carrier thread.
+ *
+ * The bus works in one of two modes, chosen by cafe.events:
+ *
+ *   local     events are put on the ring directly, only this process
+ *             sees them (the default)
+ *   postgres  events are sent with pg_notify on the cafe_orders channel
+ *             and a listener thread LISTENs on its own connection and
+ *             puts what arrives on the ring, so every process sharing
+ *             the database sees every process's changes
+ *   off       nothing is published
+ *
+ * Notifications sent while the listener is reconnecting are lost, like
+ * any NOTIFY without a listening session.
+ *
+ * In postgres mode a RemoteListener, such as the KitchenBoard, can follow
+ * the changes other processes make: every notification carries a random
+ * id of the bus that sent it, and the events of other buses are handed
+ * to the listener as they arrive. Since notifications can be lost, the
+ * listener is also told every time listening (re)starts.
+ *
+ */
+public class OrderEventBus implements AutoCloseable {
+
+   /**
+    * Follows the changes to orders made by other processes.
+    */
+   public interface RemoteListener {
+      /**
+       * Method called with the events another process published, on the
+       * listener thread, in the order they arrived.
+       *
+       * @param events the events, not numbered
+       */
+      void changed (List<OrderEvent> events);
+
+      /**
+       * Method called whenever listening starts or starts again after a
+       * lost connection, when changes may have been missed.
+       */
+      void missed ();
+   }//end RemoteListener
+
+   /**
+    * The events one call to since() returned, with the number a reader
+    * should ask after next time.
+    */
+   public static final class Batch {
+      private final List<OrderEvent> _events;
+      private final long _last;
+
+      private Batch (List<OrderEvent> events, long last) {
+         this._events = events;
+         this._last = last;
+      }//end Batch
+
+      /**
+       * @return the events, oldest first, empty when none arrived in time
+       */
+      public List<OrderEvent> getEvents () {
+         return this._events;
+      }//end getEvents
+
+      /**
+       * @return the number of the last event returned, or when there is
+       *         none the number waited after, no later than the bus
+       */
+      public long getLast () {
+         return this._last;
+      }//end getLast
+   }//end Batch
+
+   public static final String CHANNEL = "cafe_orders";
+
+   // one round trip for any number of events
+   private static final String NOTIFY = "SELECT pg_notify('" + CHANNEL + "', p) FROM unnest(?::text[]) p";
+
+   // how long getNotifications blocks before checking for close()
+   private static final int LISTEN_TIMEOUT_MS = 500;
+
+   // the instance notifications are sent through
+   private final Cafe _esql;
+
+   // send through Postgres instead of putting events on the ring directly
+   private final boolean _postgres;
+
+   // tells this bus's notifications from those of other processes
+   private final String _origin = Long.toHexString(new SecureRandom().nextLong());
+
+   // told about other processes' changes in postgres mode, or null
+   private final RemoteListener _remote;
+
+   // the last events, event number n is at n % length; guarded by _lock
+   private final OrderEvent[] _ring;
+   private long _last = 0;
+
+   private final ReentrantLock _lock = new ReentrantLock();
+
+   // signalled when events are appended or the bus closes
+   private final Condition _appended = this._lock.newCondition();
+
+   private final AtomicLong _publishFailures = new AtomicLong();
+
+   // LISTENs in postgres mode, null in local mode
+   private final Thread _listener;
+
+   private volatile boolean _closed = false;
+
+   /**
+    * Creates a new bus, in postgres mode it starts listening right away
+    *
+    * @param esql the instance notifications are sent through
+    * @param postgres whether to publish through pg_notify
+    * @param capacity how many of the last events are kept
+    * @param remote told about the changes of other processes in postgres
+    *        mode, or null
+    */
+   public OrderEventBus (Cafe esql, boolean postgres, int capacity, RemoteListener remote) {
+      this._esql = esql;
+      this._postgres = postgres;
+      this._remote = remote;
+      this._ring = new OrderEvent[Math.max(16, capacity)];
+      if (postgres){
+         this._listener = new Thread(this::listen, "cafe-order-events");
+         this._listener.setDaemon(true);
+         this._listener.start();
+      }else{
+         this._listener = null;
+      }//end if
+   }//end OrderEventBus
+
+   /**
+    * Creates a bus configured by cafe.events and cafe.events.capacity.
+    *
+    * @param esql the instance notifications are sent through
+    * @param remote told about the changes of other processes in postgres
+    *        mode, or null
+    * @return the new bus, or null when cafe.events is off
+    */
+   public static OrderEventBus fromSystemProperties (Cafe esql, RemoteListener remote) {
+      String mode = System.getProperty("cafe.events", "local");
+      if ("off".equals(mode))
+         return null;
+      if (!"local".equals(mode) && !"postgres".equals(mode))
+         throw new IllegalArgumentException("cafe.events must be local, postgres or off, not " + mode);
+      return new OrderEventBus(esql, "postgres".equals(mode), Integer.getInteger("cafe.events.capacity", 4096), remote);
+   }//end fromSystemProperties
+
+   /**
+    * @return whether events of every process sharing the database arrive
+    *         here
+    */
+   public boolean isPostgres () {
+      return this._postgres;
+   }//end isPostgres
+
+   /**
+    * Method to publish events of changes that were committed. A failure
+    * to send them is counted and otherwise ignored, since the change
+    * itself already happened.
+    *
+    * @param events the events, in the order they happened
+    */
+   public void publish (List<OrderEvent> events) {
+      if (events.isEmpty() || this._closed)
+         return;
+      if (!this._postgres){
+         append(events);
+         return;
+      }//end if
+      StringBuilder payloads = new StringBuilder("{");
+      for (OrderEvent event : events){
+         if (payloads.length() > 1)
+            payloads.append(',');
+         String payload = this._origin + "\t" + event.encode();
+         payloads.append('"').append(payload.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+      }//end for
+      try{
+         this._esql.executeQuery(NOTIFY, payloads.append('}').toString());
+      }catch (SQLException e){
+         this._publishFailures.incrementAndGet();
+      }//end try
+   }//end publish
+
+   public void publish (OrderEvent event) {
+      publish(List.of(event));
+   }//end publish
+
+   /**
+    * Method to read the events after one the caller has seen, waiting for
+    * the next one when there are none yet.
+    *
+    * @param after the number of the last event seen, 0 for none; a
+    *        number past latest() counts as latest()
+    * @param timeoutMs how long to wait when there are no events yet
+    * @return the events after it that are still kept and the number to
+    *         ask after next, both read under the same lock
+    * @throws InterruptedException when the caller is interrupted
+    */
+   public Batch since (long after, long timeoutMs) throws InterruptedException {
+      long waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeoutMs));
+      this._lock.lock();
+      try{
+         after = Math.min(after, this._last);
+         while (this._last <= after && !this._closed && waitNanos > 0)
+            waitNanos = this._appended.awaitNanos(waitNanos);
+         long first = Math.max(after + 1, this._last - this._ring.length + 1);
+         List<OrderEvent> events = new ArrayList<OrderEvent>((int) Math.max(0, this._last - first + 1));
+         for (long seq = first; seq <= this._last; ++seq)
+            events.add(this._ring[(int) (seq % this._ring.length)]);
+         return new Batch(events, Math.max(after, this._last));
+      }finally{
+         this._lock.unlock();
+      }//end try
+   }//end since
+
+   /**
+    * @return the number of the newest event, 0 when there is none
+    */
+   public long latest () {
+      this._lock.lock();
+      try{
+         return this._last;
+      }finally{
+         this._lock.unlock();
+      }//end try
+   }//end latest
+
+   /**
+    * @return how many publish calls could not notify Postgres
+    */
+   public long getPublishFailures () {
+      return this._publishFailures.get();
+   }//end getPublishFailures
+
+   /**
+    * Method to stop listening and wake up every waiting reader.
+    */
+   public void close () {
+      this._closed = true;
+      if (this._listener != null)
+         this._listener.interrupt();
+      this._lock.lock();
+      try{
+         this._appended.signalAll();
+      }finally{
+         this._lock.unlock();
+      }//end try
+   }//end close
+
+   private void append (List<OrderEvent> events) {
+      this._lock.lock();
+      try{
+         for (OrderEvent event : events){
+            ++this._last;
+            this._ring[(int) (this._last % this._ring.length)] = event.withSeq(this._last);
+         }//end for
+         this._appended.signalAll();
+      }finally{
+         this._lock.unlock();
+      }//end try
+   }//end append
+
+   /*
+    * Body of the listener thread: LISTENs on a connection of its own,
+    * outside the pool since it is held for good, and reconnects after
+    * a second when the connection breaks.
+    */
+   private void listen () {
+      while (!this._closed){
+         try (Connection conn = this._esql.getPool().getDataSource().getConnection();
+              Statement stmt = conn.createStatement()){
+            stmt.execute("LISTEN " + CHANNEL);
+            if (this._remote != null)
+               this._remote.missed();
+            PGConnection pg = conn.unwrap(PGConnection.class);
+            while (!this._closed){
+               PGNotification[] notifications = pg.getNotifications(LISTEN_TIMEOUT_MS);
+               if (notifications == null || notifications.length == 0)
+                  continue;
+               List<OrderEvent> events = new ArrayList<OrderEvent>(notifications.length);
+               List<OrderEvent> remote = new ArrayList<OrderEvent>();
+               for (PGNotification n : notifications){
+                  String payload = n.getParameter();
+                  int tab = payload.indexOf('\t');
+                  try{
+                     OrderEvent event = OrderEvent.decode(payload.substring(tab + 1));
+                     events.add(event);
+                     if (!payload.substring(0, Math.max(0, tab)).equals(this._origin))
+                        remote.add(event);
+                  }catch (IllegalArgumentException e){
+                     // someone else's NOTIFY on the channel, not ours
+                  }//end try
+               }//end for
+               append(events);
+               if (this._remote != null && !remote.isEmpty())
+                  this._remote.changed(remote);
+            }//end while
+         }catch (SQLException e){
+            if (this._closed)
+               return;
+            System.err.println("order event listener lost its connection: " + e.getMessage());
+            try{
+               Thread.sleep(1000);
+            }catch (InterruptedException ie){
+               return;
+            }//end try
+         }//end try
+      }//end while
+   }//end listen
+
+}//end OrderEventBus
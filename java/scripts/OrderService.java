@@ -0,0 +1,1097 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the business logic of the cafe behind a headless API.
+ * Every call names the user it acts for through an explicit Session
+ * instead of the console's authorisedUser, and takes its input as
+ * arguments instead of reading the keyboard, so one instance can serve
+ * many users from many threads at once.
+ *
+ * The service keeps no state of its own: every call borrows connections
+ * from the Cafe pool, and calls that write more than one row run in a
+ * single transaction. Calls a session's user type does not allow throw a
+ * SecurityException; orders and users that do not exist are reported
+ * through the return value.
+ *
+ * Open orders are read from the Cafe KitchenBoard when it is on. Every
+ * write to an order goes through to the board and, once committed, is
+ * published on the Cafe OrderEventBus.
+ *
+ * Every call is timed into the CafeMetrics histogram of its operation,
+ * which covers only the work done here and never the time a user takes
+ * to type the input.
+ *
+ * Orders and ItemStatus rows carry a version that every write bumps. A
+ * flow that reads a row, waits for its user and then writes passes the
+ * version it read, and the write applies only if the row is still at
+ * that version, so no row stays locked while the user types. Marking an
+ * order paid is refused with CHANGED when the order moved on, so the
+ * user can look at it again. Advancing an item is retried on the new
+ * version, at most cafe.occ.maxRetries times (3 by default), when only
+ * its amount or comment changed. Changes of amounts need no version:
+ * they add to what is there, so they give the same order in whatever
+ * order they commit. Every conflict and retry is counted in CafeMetrics.
+ *
+ */
+public class OrderService {
+
+   /**
+    * What a session can do with an order.
+    */
+   public enum OrderState {
+      // no such order, or not one the session may see
+      MISSING,
+      // the order is paid and can no longer change
+      PAID,
+      // the order is unpaid and can still change
+      OPEN,
+      // the order changed since the caller read it, nothing was written
+      CHANGED
+   }//end OrderState
+
+   /**
+    * Menu columns that updateMenuItem can change.
+    */
+   public enum MenuField {
+      ITEMNAME("itemName"), TYPE("type"), PRICE("price"),
+      DESCRIPTION("description"), IMAGEURL("imageURL");
+
+      private final String _column;
+
+      MenuField (String column) {
+         this._column = column;
+      }//end MenuField
+   }//end MenuField
+
+   /**
+    * The version to pass when the caller did not read the row first.
+    */
+   public static final int ANY_VERSION = -1;
+
+   /**
+    * The status of an item on an order and the version it was read at.
+    */
+   public static final class ItemVersion {
+      private final String _status;
+      private final int _version;
+
+      ItemVersion (String status, int version) {
+         this._status = status;
+         this._version = version;
+      }//end ItemVersion
+
+      public String getStatus () {
+         return this._status;
+      }//end getStatus
+
+      public int getVersion () {
+         return this._version;
+      }//end getVersion
+   }//end ItemVersion
+
+   // the user types Users.type may hold
+   private static final List<String> USER_TYPES = List.of("Customer", "Employee", "Manager");
+
+   // the columns of SELECT * FROM Menu, for rows rendered from the menu cache
+   private static final String[] MENU_COLUMNS = { "itemname", "type", "price", "description", "imageurl" };
+
+   // profile of a user, one round trip for the login and all of it
+   private static final String SELECT_PROFILE = "SELECT login, type, favItems FROM Users WHERE login = ?";
+
+   // adds to the amount of an item already on the order, or adds the item
+   private static final String UPSERT_ITEM =
+      "INSERT INTO ItemStatus (orderid, itemName, amount, lastUpdated, status, comments) "
+      + "VALUES (?, ?, ?, NOW(), 'Has Not Started', ?) "
+      + "ON CONFLICT (orderid, itemName) DO UPDATE SET amount = ItemStatus.amount + EXCLUDED.amount, "
+      + "lastUpdated = EXCLUDED.lastUpdated, comments = EXCLUDED.comments, version = ItemStatus.version + 1";
+
+   // claims an unpaid order of a user for a change; it also locks the
+   // row until the change commits, so a payment cannot slip in between
+   private static final String BUMP_ORDER =
+      "UPDATE Orders SET version = version + 1 WHERE orderid = ? AND login = ? AND paid = false";
+
+   // pays an unpaid order if it is still at the version read, a null
+   // version matches any
+   private static final String PAY_ORDER =
+      "UPDATE Orders SET paid = true, updatedAt = NOW(), version = version + 1 "
+      + "WHERE orderid = ? AND paid = false AND version = COALESCE(?::integer, version)";
+
+   // the total of an order from its items at the current menu prices,
+   // summed in numeric cents like OrderCart so real rounding cannot creep in
+   private static final String RECOMPUTE_TOTAL =
+      "UPDATE Orders O SET total = COALESCE((SELECT SUM(I.amount * ROUND(M.price::numeric, 2)) FROM ItemStatus I "
+      + "JOIN Menu M ON M.itemName = I.itemName WHERE I.orderid = O.orderid), 0), updatedAt = NOW() "
+      + "WHERE O.orderid = ?";
+
+   // bulk status transitions; the order ids are bound as one int[] literal,
+   // so a single statement shape serves any number of orders. Every status
+   // change returns the rows it changed for the kitchen board.
+   private static final String RETURNING_STATUS = " RETURNING orderid, itemName, status, lastUpdated";
+   private static final String START_ORDERS =
+      "UPDATE ItemStatus SET status = 'Started', lastUpdated = NOW(), version = version + 1 "
+      + "WHERE orderid = ANY(?::integer[]) AND status = 'Has Not Started'" + RETURNING_STATUS;
+   private static final String FINISH_ORDERS =
+      "UPDATE ItemStatus SET status = 'Finished', lastUpdated = NOW(), version = version + 1 "
+      + "WHERE orderid = ANY(?::integer[]) AND status <> 'Finished'" + RETURNING_STATUS;
+   private static final String ADVANCE_MENU_ITEM =
+      "UPDATE ItemStatus SET status = CASE WHEN status = 'Has Not Started' THEN 'Started' ELSE 'Finished' END, "
+      + "lastUpdated = NOW(), version = version + 1 WHERE itemName = ? AND status <> 'Finished' "
+      + "AND orderid IN (SELECT O.orderid FROM Orders O WHERE O.paid = false)" + RETURNING_STATUS;
+   private static final String ADVANCE_ITEM =
+      "UPDATE ItemStatus SET status = ?, lastUpdated = NOW(), version = version + 1 "
+      + "WHERE orderid = ? AND itemName = ? AND status = ? AND version = COALESCE(?::integer, version)"
+      + RETURNING_STATUS;
+
+   // the instance every call goes through
+   private final Cafe _esql;
+
+   // trimmed login -> session, null when the cache is turned off
+   private final ConcurrentHashMap<String, Session> _sessions;
+
+   // open orders written through on every change, null when turned off
+   private final KitchenBoard _board;
+
+   // where committed changes to orders are published, null when turned off
+   private final OrderEventBus _events;
+
+   // unpaid orders read incrementally, null when the board answers them
+   // or cafe.currentOrders is query
+   private final CurrentOrders _current;
+
+   // how often a compare-and-set that missed is tried again
+   private final int _maxRetries;
+
+   /**
+    * Creates a new service. Sessions are cached in memory only when the
+    * system property cafe.sessionCache is true: the cache does not see
+    * changes other processes make to Users, so a changed user type would
+    * keep its old rights here until the user logs in again.
+    *
+    * @param esql the instance every call goes through
+    */
+   public OrderService (Cafe esql) {
+      this(esql, Boolean.getBoolean("cafe.sessionCache"));
+   }//end OrderService
+
+   /**
+    * Creates a new service
+    *
+    * @param esql the instance every call goes through
+    * @param cacheSessions whether openSession may answer from memory
+    */
+   public OrderService (Cafe esql, boolean cacheSessions) {
+      this._esql = esql;
+      this._sessions = cacheSessions ? new ConcurrentHashMap<String, Session>() : null;
+      this._board = esql.getBoard();
+      this._events = esql.getEvents();
+      this._current = this._board == null && !"query".equals(System.getProperty("cafe.currentOrders"))
+         ? new CurrentOrders(esql, Long.getLong("cafe.currentOrders.overlapMs", 10000L)) : null;
+      this._maxRetries = Math.max(0, Integer.getInteger("cafe.occ.maxRetries", 3));
+   }//end OrderService
+
+   /**
+    * Method to check credentials and open a session. The login, user
+    * type and favourite items come back in the same round trip that
+    * checks the password, and the session cache is refreshed with them.
+    *
+    * @param login the login typed by the user
+    * @param password the password typed by the user
+    * @return the new session or null when the credentials do not match
+    * @throws java.sql.SQLException when the user cannot be read
+    */
+   public Session logIn (String login, String password) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         ResultTable profile = this._esql.executeQueryForTable(SELECT_PROFILE + " AND password = ?", login, password);
+         if (profile.getRowCount() == 0)
+            return null;
+         return remember(login, profile);
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.LOG_IN, start);
+      }//end try
+   }//end logIn
+
+   /**
+    * Method to open a session for a user that is already authenticated.
+    * Answered from the session cache without a round trip when the user
+    * logged in or was looked up before.
+    *
+    * @param login the login of the user
+    * @return the session or null when there is no such user
+    * @throws java.sql.SQLException when the user cannot be read
+    */
+   public Session openSession (String login) throws SQLException {
+      if (this._sessions != null){
+         Session cached = this._sessions.get(login.stripTrailing());
+         if (cached != null)
+            return cached;
+      }//end if
+      ResultTable profile = this._esql.executeQueryForTable(SELECT_PROFILE, login);
+      if (profile.getRowCount() == 0)
+         return null;
+      return remember(login, profile);
+   }//end openSession
+
+   /**
+    * Method to register a new customer.
+    *
+    * @param login the new login, not empty
+    * @param password the password, not empty
+    * @param phone the phone number, may be empty
+    * @throws java.sql.SQLException when the user cannot be written, for
+    *         example because the login is taken
+    */
+   public void createUser (String login, String password, String phone) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         if (login == null || login.trim().isEmpty())
+            throw new IllegalArgumentException("login cant be empty");
+         if (password == null || password.trim().isEmpty())
+            throw new IllegalArgumentException("password cant be empty");
+         String query = "INSERT INTO USERS (phoneNum, login, password, favItems, type) VALUES (?,?,?,?,?)";
+         this._esql.executeUpdate(query, blankToEmpty(phone), login, password, "", "Customer");
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.CREATE_USER, start);
+      }//end try
+   }//end createUser
+
+   /**
+    * Method to render the menu items whose name contains a word. With the
+    * menu search index on, case is ignored and the best matches come
+    * first; otherwise the Menu table is searched with LIKE.
+    *
+    * @param word the text to look for
+    * @param renderer where the rows go
+    * @return the number of rows
+    * @throws java.sql.SQLException when the menu cannot be read
+    */
+   public int browseMenuByName (String word, ResultRenderer renderer) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         MenuSearchIndex index = this._esql.getMenu().getSearchIndex();
+         if (index != null)
+            return renderer.render(MENU_COLUMNS, menuRows(index.search(word, MenuSearchIndex.Field.NAME)));
+         return this._esql.executeQueryAndRender(renderer, "SELECT * FROM Menu M WHERE M.ItemName::text LIKE ?", "%" + word + "%");
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.BROWSE_MENU, start);
+      }//end try
+   }//end browseMenuByName
+
+   /**
+    * Method to render the menu items whose type contains a word, like
+    * browseMenuByName.
+    *
+    * @param word the text to look for
+    * @param renderer where the rows go
+    * @return the number of rows
+    * @throws java.sql.SQLException when the menu cannot be read
+    */
+   public int browseMenuByType (String word, ResultRenderer renderer) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         MenuSearchIndex index = this._esql.getMenu().getSearchIndex();
+         if (index != null)
+            return renderer.render(MENU_COLUMNS, menuRows(index.search(word, MenuSearchIndex.Field.TYPE)));
+         return this._esql.executeQueryAndRender(renderer, "SELECT * FROM Menu M WHERE M.Type::text LIKE ?", "%" + word + "%");
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.BROWSE_MENU, start);
+      }//end try
+   }//end browseMenuByType
+
+   /**
+    * Method to render the menu items whose name, type or description
+    * contains a word, ignoring case, best matches first when the menu
+    * search index is on.
+    *
+    * @param word the text to look for
+    * @param renderer where the rows go
+    * @return the number of rows
+    * @throws java.sql.SQLException when the menu cannot be read
+    */
+   public int searchMenu (String word, ResultRenderer renderer) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         MenuSearchIndex index = this._esql.getMenu().getSearchIndex();
+         if (index != null)
+            return renderer.render(MENU_COLUMNS, menuRows(index.search(word)));
+         return this._esql.executeQueryAndRender(renderer,
+            "SELECT * FROM Menu M WHERE M.ItemName::text ILIKE ? OR M.Type::text ILIKE ? OR M.Description::text ILIKE ?",
+            "%" + word + "%", "%" + word + "%", "%" + word + "%");
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.BROWSE_MENU, start);
+      }//end try
+   }//end searchMenu
+
+   /**
+    * Method to place a new order for the session user. The order and all
+    * its ItemStatus rows are written in one transaction, with the total
+    * the cart priced them at, and then put on the kitchen board.
+    *
+    * @param session the user the order is placed for
+    * @param cart the items, every amount at least 1
+    * @return the new orderid
+    * @throws java.sql.SQLException when the order cannot be written
+    */
+   public int placeOrder (final Session session, final OrderCart cart) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         if (cart.isEmpty())
+            throw new IllegalArgumentException("an order needs at least one item");
+         for (int line = 0; line < cart.size(); ++line)
+            if (cart.getAmount(line) < 1)
+               throw new IllegalArgumentException("amount of " + cart.getName(line) + " must be at least 1");
+         final double orderTotal = cart.getTotal();
+
+         ResultTable placed = this._esql.inTransaction(() -> {
+            String query = "INSERT INTO Orders (login, paid, timeStampRecieved, total) VALUES (?, false, NOW(), ?) RETURNING orderid, timeStampRecieved";
+            ResultTable order = this._esql.executeQueryForTable(query, session.getLogin(), orderTotal);
+            int orderid = order.getInt(0, 0);
+
+            // NOW() is fixed for the transaction, so lastUpdated matches timeStampRecieved
+            String item_status_query = "INSERT INTO ItemStatus (orderid, itemName, amount, lastUpdated, status, comments) VALUES (?, ?, ?, NOW(), 'Has Not Started', ?)";
+            this._esql.executeBatch(item_status_query, itemRows(orderid, cart));
+            return order;
+         });
+         int orderid = placed.getInt(0, 0);
+         CafeOperationEvent.noteOrder(orderid, cart.size());
+         if (this._board != null)
+            this._board.add(orderid, session.getLogin(), placed.getString(0, 1), orderTotal, cart);
+         publish(new OrderEvent(OrderEvent.Type.PLACED, orderid, session.getLogin(), null, null));
+         return orderid;
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.ADD_ORDER, start);
+      }//end try
+   }//end placeOrder
+
+   /**
+    * @param session the user asking
+    * @param orderid the order
+    * @return the state of the order if the session user placed it,
+    *         MISSING otherwise
+    * @throws java.sql.SQLException when the order cannot be read
+    */
+   public OrderState getOwnOrderState (Session session, int orderid) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         return ownState(session, orderid);
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.CHECK_ORDER, start);
+      }//end try
+   }//end getOwnOrderState
+
+   /**
+    * @param session the user asking
+    * @param orderid the order
+    * @return the state of the order; staff see every order, customers
+    *         only their own
+    * @throws java.sql.SQLException when the order cannot be read
+    */
+   public OrderState getOrderState (Session session, int orderid) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         if (!session.isStaff())
+            return ownState(session, orderid);
+         KitchenBoard.Order order = this._board == null ? null : this._board.get(orderid);
+         if (order != null)
+            return order.isPaid() ? OrderState.PAID : OrderState.OPEN;
+         return state(this._esql.executeQueryForTable(
+            "SELECT paid FROM Orders O WHERE O.orderid = ?", orderid));
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.CHECK_ORDER, start);
+      }//end try
+   }//end getOrderState
+
+   /**
+    * @param session the user asking
+    * @param orderid the order
+    * @return the version of the order to write it at, or ANY_VERSION when
+    *         the session may not see it; staff see every order, customers
+    *         only their own
+    * @throws java.sql.SQLException when the order cannot be read
+    */
+   public int getOrderVersion (Session session, int orderid) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         ResultTable version = session.isStaff()
+            ? this._esql.executeQueryForTable("SELECT version FROM Orders O WHERE O.orderid = ?", orderid)
+            : this._esql.executeQueryForTable(
+               "SELECT version FROM Orders O WHERE O.login = ? AND O.orderid = ?", session.getLogin(), orderid);
+         return version.getRowCount() == 0 ? ANY_VERSION : version.getInt(0, 0);
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.CHECK_ORDER, start);
+      }//end try
+   }//end getOrderVersion
+
+   /**
+    * Method to change the amounts of an unpaid order of the session user.
+    * Positive amounts add to an item, negative ones take away from it;
+    * items not on the order yet are added, and items that drop to 0 or
+    * below are removed. Everything runs in one transaction that first
+    * bumps the version of the order if it is still unpaid, which locks
+    * the row until commit so a concurrent payment cannot slip in between.
+    * The amounts add to whatever the order holds by then, so no version
+    * read earlier is checked: two changes give the same order in either
+    * order. Takes four round trips however many items change: the
+    * version, one batch of upserts, the cleanup of this order's emptied
+    * items and the recomputed total. A fifth reads the order back onto
+    * the kitchen board when it is on.
+    *
+    * @param session the user who placed the order
+    * @param orderid the order to change
+    * @param cart the change in amount of each item and its new comment
+    * @return OPEN when the order was changed, otherwise why it was not
+    * @throws java.sql.SQLException when the order cannot be written
+    */
+   public OrderState updateOrder (final Session session, final int orderid,
+                                  final OrderCart cart) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         CafeOperationEvent.noteOrder(orderid, cart.size());
+
+         try{
+            OrderState result = this._esql.inTransaction(() -> {
+               if (cart.isEmpty() || this._esql.executeUpdate(BUMP_ORDER, orderid, session.getLogin()) == 0)
+                  return state(this._esql.executeQueryForTable(
+                     "SELECT paid FROM Orders O WHERE O.login = ? AND O.orderid = ?", session.getLogin(), orderid));
+
+               this._esql.executeBatch(UPSERT_ITEM, itemRows(orderid, cart));
+               this._esql.executeUpdate("DELETE FROM ItemStatus WHERE orderid = ? AND amount <= 0", orderid);
+               this._esql.executeUpdate(RECOMPUTE_TOTAL, orderid);
+               // read back while the version bump still locks the order
+               // row, so two updates of one order reach the board in
+               // commit order
+               if (this._board != null)
+                  this._board.refresh(orderid);
+               return OrderState.OPEN;
+            });
+            if (result == OrderState.OPEN && !cart.isEmpty())
+               publish(new OrderEvent(OrderEvent.Type.UPDATED, orderid, session.getLogin(), null, null));
+            return result;
+         }catch (SQLException | RuntimeException e){
+            // the board may hold the rolled back rows
+            if (this._board != null){
+               try{
+                  this._board.refresh(orderid);
+               }catch (SQLException r){
+                  e.addSuppressed(r);
+               }//end try
+            }//end if
+            throw e;
+         }//end try
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.UPDATE_ORDER, start);
+      }//end try
+   }//end updateOrder
+
+   /**
+    * Method to mark an order as paid, whatever version it is at.
+    *
+    * @param session an employee or manager
+    * @param orderid the order
+    * @return true when the order exists
+    * @throws java.sql.SQLException when the order cannot be written
+    */
+   public boolean markPaid (Session session, int orderid) throws SQLException {
+      return markPaid(session, orderid, ANY_VERSION) != OrderState.MISSING;
+   }//end markPaid
+
+   /**
+    * Method to mark an order as paid, the way it was when it was read.
+    * If it changed since, for example because the customer added items,
+    * nothing is written and the caller should show it again before
+    * asking whether to mark it paid.
+    *
+    * @param session an employee or manager
+    * @param orderid the order
+    * @param seenVersion getOrderVersion() when the order was shown, or
+    *        ANY_VERSION
+    * @return PAID when the order is paid now or already was, CHANGED when
+    *         it moved on from the version seen, MISSING when it does not
+    *         exist
+    * @throws java.sql.SQLException when the order cannot be written
+    */
+   public OrderState markPaid (Session session, int orderid, int seenVersion) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireStaff(session, "mark orders paid");
+         CafeOperationEvent.noteOrder(orderid, 0);
+         if (this._esql.executeUpdate(PAY_ORDER, orderid, expected(seenVersion)) == 0){
+            OrderState state = state(this._esql.executeQueryForTable(
+               "SELECT paid FROM Orders O WHERE O.orderid = ?", orderid));
+            if (state != OrderState.OPEN)
+               return state;
+            this._esql.getMetrics().recordConflict(CafeMetrics.Operation.MARK_PAID);
+            return OrderState.CHANGED;
+         }//end if
+         if (this._board != null)
+            this._board.markPaid(orderid);
+         publish(new OrderEvent(OrderEvent.Type.PAID, orderid, null, null, null));
+         return OrderState.PAID;
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.MARK_PAID, start);
+      }//end try
+   }//end markPaid
+
+   /**
+    * @param session the user asking
+    * @param orderid the order
+    * @param itemName the item on the order
+    * @return the status of the item without padding, or null when the
+    *         item is not on an order the session may see
+    * @throws java.sql.SQLException when the status cannot be read
+    */
+   public String getItemStatus (Session session, int orderid, String itemName) throws SQLException {
+      KitchenBoard.Order order = this._board == null ? null : this._board.get(orderid);
+      if (order != null){
+         KitchenBoard.Item item = visible(session, order) ? order.getItem(itemName) : null;
+         return item == null ? null : item.getStatus();
+      }//end if
+      if (getOrderState(session, orderid) == OrderState.MISSING)
+         return null;
+      ResultTable status = this._esql.executeQueryForTable(
+         "Select status FROM ItemStatus I WHERE I.orderid = ? AND I.itemName = ?", orderid, itemName);
+      return status.getRowCount() == 0 ? null : status.getString(0, 0);
+   }//end getItemStatus
+
+   /**
+    * @param session the user asking
+    * @param orderid the order
+    * @param itemName the item on the order
+    * @return the status of the item and its version, or null when the
+    *         item is not on an order the session may see
+    * @throws java.sql.SQLException when the item cannot be read
+    */
+   public ItemVersion getItemVersion (Session session, int orderid, String itemName) throws SQLException {
+      ResultTable item = session.isStaff()
+         ? this._esql.executeQueryForTable(
+            "SELECT I.status, I.version FROM ItemStatus I WHERE I.orderid = ? AND I.itemName = ?", orderid, itemName)
+         : this._esql.executeQueryForTable(
+            "SELECT I.status, I.version FROM ItemStatus I JOIN Orders O ON O.orderid = I.orderid "
+            + "WHERE O.login = ? AND I.orderid = ? AND I.itemName = ?", session.getLogin(), orderid, itemName);
+      return item.getRowCount() == 0 ? null : new ItemVersion(item.getString(0, 0), item.getInt(0, 1));
+   }//end getItemVersion
+
+   /**
+    * Method to move an item one step along Has Not Started -> Started ->
+    * Finished. The update only applies if the item is still in the status
+    * it was read in, so two employees advancing the same item at once
+    * move it one step, not two.
+    *
+    * @param session an employee or manager
+    * @param orderid the order
+    * @param itemName the item on the order
+    * @return the new status, or null when the item does not exist, is
+    *         already finished or was changed by someone else meanwhile
+    * @throws java.sql.SQLException when the status cannot be written
+    */
+   public String advanceItemStatus (Session session, int orderid, String itemName) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireStaff(session, "change item status");
+         CafeOperationEvent.noteOrder(orderid, 1);
+         return advance(session, orderid, itemName, getItemStatus(session, orderid, itemName), ANY_VERSION);
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.ADVANCE_ITEM, start);
+      }//end try
+   }//end advanceItemStatus
+
+   /**
+    * Method to move an item one step on from the status it was read in.
+    * The update applies only if the item is still at the version read.
+    * When only its amount or comment changed meanwhile, the step is taken
+    * on the new version; when its status changed, it is not.
+    *
+    * @param session an employee or manager
+    * @param orderid the order
+    * @param itemName the item on the order
+    * @param seen getItemVersion() when the item was read
+    * @return the new status, or null when the item does not exist, is
+    *         already finished or its status was changed by someone else
+    *         meanwhile
+    * @throws java.sql.SQLException when the status cannot be written, with
+    *         SQLState 40001 when the item kept changing through every retry
+    */
+   public String advanceItemStatus (Session session, int orderid, String itemName,
+                                    ItemVersion seen) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireStaff(session, "change item status");
+         CafeOperationEvent.noteOrder(orderid, 1);
+         return advance(session, orderid, itemName, seen.getStatus(), seen.getVersion());
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.ADVANCE_ITEM, start);
+      }//end try
+   }//end advanceItemStatus
+
+   /**
+    * @param status an item status
+    * @return the status that follows it, or null after Finished
+    */
+   public static String nextStatus (String status) {
+      if ("Has Not Started".equals(status))
+         return "Started";
+      if ("Started".equals(status))
+         return "Finished";
+      return null;
+   }//end nextStatus
+
+   /**
+    * Method to start every item of a set of orders that has not started
+    * yet, in a single statement however many orders and items there are.
+    *
+    * @param session an employee or manager
+    * @param orderids the orders
+    * @return the number of items started
+    * @throws java.sql.SQLException when the statuses cannot be written
+    */
+   public int startOrders (Session session, int... orderids) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireStaff(session, "change item status");
+         if (orderids.length == 0)
+            return 0;
+         return transition(START_ORDERS, idArray(orderids));
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.ADVANCE_ORDERS, start);
+      }//end try
+   }//end startOrders
+
+   /**
+    * Method to finish every item of a set of orders that is not finished
+    * yet, whether it was started or not, in a single statement.
+    *
+    * @param session an employee or manager
+    * @param orderids the orders
+    * @return the number of items finished
+    * @throws java.sql.SQLException when the statuses cannot be written
+    */
+   public int finishOrders (Session session, int... orderids) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireStaff(session, "change item status");
+         if (orderids.length == 0)
+            return 0;
+         return transition(FINISH_ORDERS, idArray(orderids));
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.ADVANCE_ORDERS, start);
+      }//end try
+   }//end finishOrders
+
+   /**
+    * Method to move every pending line of one menu item one step along
+    * Has Not Started -> Started -> Finished, on all open (unpaid) orders
+    * at once, as the kitchen does when it makes a whole tray of the same
+    * item. Each line moves exactly one step, in a single statement.
+    *
+    * @param session an employee or manager
+    * @param itemName the menu item
+    * @return the number of order lines advanced
+    * @throws java.sql.SQLException when the statuses cannot be written
+    */
+   public int advanceMenuItem (Session session, String itemName) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireStaff(session, "change item status");
+         return transition(ADVANCE_MENU_ITEM, itemName);
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.ADVANCE_ORDERS, start);
+      }//end try
+   }//end advanceMenuItem
+
+   /**
+    * Method to render the items of an order. Open orders are answered
+    * from the kitchen board.
+    *
+    * @param session the user asking
+    * @param orderid the order
+    * @param renderer where the rows go
+    * @return the number of rows, or -1 when the session may not see the order
+    * @throws java.sql.SQLException when the items cannot be read
+    */
+   public int viewOrderStatus (Session session, int orderid, ResultRenderer renderer) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         CafeOperationEvent.noteOrder(orderid, 0);
+         KitchenBoard.Order order = this._board == null ? null : this._board.get(orderid);
+         if (order != null)
+            return visible(session, order) ? renderer.render(KitchenBoard.ITEM_COLUMNS, KitchenBoard.itemRows(order)) : -1;
+         if (!session.isStaff()
+             && !this._esql.executeExists("SELECT 1 FROM Orders O WHERE O.orderid = ? AND O.login = ?", orderid, session.getLogin()))
+            return -1;
+         return this._esql.executeQueryAndRender(renderer, "SELECT * FROM ItemStatus I WHERE I.orderid = ?", orderid);
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.VIEW_ORDER_STATUS, start);
+      }//end try
+   }//end viewOrderStatus
+
+   /**
+    * Method to render the unpaid orders of the last day. Every unpaid
+    * order is open, so the kitchen board answers it when it is on.
+    * Otherwise a CurrentOrders copy shared by all staff is refreshed with
+    * the orders changed since the last call, unless cafe.currentOrders is
+    * query, which reads the whole day every time.
+    *
+    * @param session an employee or manager
+    * @param renderer where the rows go
+    * @return the number of rows
+    * @throws java.sql.SQLException when the orders cannot be read
+    */
+   public int viewCurrentOrders (Session session, ResultRenderer renderer) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireStaff(session, "view current orders");
+         if (this._board != null)
+            return renderer.render(KitchenBoard.ORDER_COLUMNS,
+               KitchenBoard.orderRows(this._board.unpaidSince(LocalDateTime.now().minusDays(1))));
+         if (this._current != null)
+            return renderer.render(KitchenBoard.ORDER_COLUMNS, this._current.refresh());
+         String select_query = "SELECT orderid, login, timeStampRecieved, total FROM Orders WHERE paid = 'false' AND timeStampRecieved >= NOW() - '1 day'::INTERVAL";
+         return this._esql.executeQueryAndRender(renderer, select_query);
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.VIEW_CURRENT_ORDER, start);
+      }//end try
+   }//end viewCurrentOrders
+
+   /**
+    * Method to wait for changes to orders, the push counterpart of
+    * viewCurrentOrders. Start from latestEvent() taken before reading the
+    * current orders, then pass the number of the last event returned.
+    *
+    * @param session an employee or manager
+    * @param after the number of the last event seen
+    * @param timeoutMs how long to wait when there are no new events
+    * @return the events after it, empty when none arrived in time, and
+    *         the number to pass next
+    * @throws InterruptedException when the caller is interrupted
+    */
+   public OrderEventBus.Batch waitForEvents (Session session, long after, long timeoutMs) throws InterruptedException {
+      requireStaff(session, "follow the order feed");
+      return events().since(after, timeoutMs);
+   }//end waitForEvents
+
+   /**
+    * @return the number of the newest order event
+    */
+   public long latestEvent () {
+      return events().latest();
+   }//end latestEvent
+
+   /**
+    * Method to render the five most recent orders of the session user.
+    *
+    * @param session the user asking
+    * @param renderer where the rows go
+    * @return the number of rows
+    * @throws java.sql.SQLException when the orders cannot be read
+    */
+   public int viewOrderHistory (Session session, ResultRenderer renderer) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         String select_query = "SELECT orderid FROM Orders WHERE login = ? ORDER BY timeStampRecieved DESC LIMIT 5";
+         return this._esql.executeQueryAndRender(renderer, select_query, session.getLogin());
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.VIEW_ORDER_HISTORY, start);
+      }//end try
+   }//end viewOrderHistory
+
+   public void updatePassword (Session session, String password) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         if (password == null || password.trim().isEmpty())
+            throw new IllegalArgumentException("new password cannot be empty");
+         this._esql.executeUpdate("UPDATE Users SET password = ? WHERE login = ?", password, session.getLogin());
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.UPDATE_USER_INFO, start);
+      }//end try
+   }//end updatePassword
+
+   public void updatePhone (Session session, String phone) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         this._esql.executeUpdate("UPDATE Users SET phoneNum = ? WHERE login = ?", blankToEmpty(phone), session.getLogin());
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.UPDATE_USER_INFO, start);
+      }//end try
+   }//end updatePhone
+
+   public void addFavoriteItem (Session session, String item) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         this._esql.executeUpdate("UPDATE Users SET favItems = favItems ||' / '|| ? WHERE login = ?", blankToEmpty(item), session.getLogin());
+         forgetSession(session.getLogin());
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.UPDATE_USER_INFO, start);
+      }//end try
+   }//end addFavoriteItem
+
+   public boolean userExists (String login) throws SQLException {
+      return this._esql.executeExists("SELECT 1 FROM Users U WHERE U.login = ?", login);
+   }//end userExists
+
+   /**
+    * Method to change the type of another user.
+    *
+    * @param session a manager
+    * @param login the user to change
+    * @param type Customer, Employee or Manager
+    * @return true when the user exists
+    * @throws java.sql.SQLException when the user cannot be written
+    */
+   public boolean changeUserType (Session session, String login, String type) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireManager(session, "change user types");
+         if (!USER_TYPES.contains(type))
+            throw new IllegalArgumentException("Unrecognized type: " + type);
+         int rows = this._esql.executeUpdate("UPDATE Users SET type = ? WHERE login = ?", type, login);
+         forgetSession(login);
+         return rows > 0;
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.CHANGE_USER_TYPE, start);
+      }//end try
+   }//end changeUserType
+
+   /**
+    * Method to add an item to the menu and the menu cache.
+    *
+    * @param session a manager
+    * @param item the new item, name, type and a positive price are required
+    * @throws java.sql.SQLException when the item cannot be written
+    */
+   public void addMenuItem (Session session, MenuItem item) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireManager(session, "change the menu");
+         if (item.getName().trim().isEmpty() || item.getType().trim().isEmpty())
+            throw new IllegalArgumentException("itemName and type cannot be empty");
+         if (item.getPrice() <= 0)
+            throw new IllegalArgumentException("price must be positive");
+         String update_query = "INSERT INTO Menu (itemName, type, price, description, imageURL) VALUES (?, ?, ?, ?, ?)";
+         this._esql.executeUpdate(update_query, item.getName(), item.getType(), item.getPrice(),
+            blankToEmpty(item.getDescription()), blankToEmpty(item.getImageURL()));
+         this._esql.getMenu().refresh(item.getName());
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.UPDATE_MENU, start);
+      }//end try
+   }//end addMenuItem
+
+   /**
+    * Method to change one column of a menu item and refresh the menu cache.
+    *
+    * @param session a manager
+    * @param itemName the item to change
+    * @param field the column to change
+    * @param value the new value, a Double for PRICE and a String otherwise
+    * @return the name of the item after the change, or null when there is
+    *         no such item
+    * @throws java.sql.SQLException when the item cannot be written
+    */
+   public String updateMenuItem (Session session, String itemName, MenuField field, Object value) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireManager(session, "change the menu");
+         if (field == MenuField.PRICE && ((Number) value).doubleValue() <= 0)
+            throw new IllegalArgumentException("price must be positive");
+         if ((field == MenuField.ITEMNAME || field == MenuField.TYPE)
+             && (value == null || value.toString().trim().isEmpty()))
+            throw new IllegalArgumentException("new " + field._column + " cannot be empty");
+         if (field == MenuField.DESCRIPTION || field == MenuField.IMAGEURL)
+            value = blankToEmpty((String) value);
+
+         String update_query = "UPDATE Menu SET " + field._column + " = ? WHERE itemName = ?";
+         if (this._esql.executeUpdate(update_query, value, itemName) == 0)
+            return null;
+         if (field == MenuField.ITEMNAME){
+            this._esql.getMenu().invalidate(itemName);
+            itemName = (String) value;
+         }//end if
+         this._esql.getMenu().refresh(itemName);
+         return itemName;
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.UPDATE_MENU, start);
+      }//end try
+   }//end updateMenuItem
+
+   /**
+    * Method to remove an item from the menu and the menu cache.
+    *
+    * @param session a manager
+    * @param itemName the item to remove
+    * @return true when the item existed
+    * @throws java.sql.SQLException when the item cannot be deleted
+    */
+   public boolean deleteMenuItem (Session session, String itemName) throws SQLException {
+      long start = System.nanoTime();
+      try{
+         requireManager(session, "change the menu");
+         int rows = this._esql.executeUpdate("DELETE FROM Menu WHERE itemName = ?", itemName);
+         this._esql.getMenu().invalidate(itemName);
+         return rows > 0;
+      }finally{
+         this._esql.getMetrics().recordOperation(CafeMetrics.Operation.UPDATE_MENU, start);
+      }//end try
+   }//end deleteMenuItem
+
+   // menu rows laid out like MENU_COLUMNS; a real prints like Postgres prints it
+   private static List<String[]> menuRows (List<MenuItem> items) {
+      List<String[]> rows = new ArrayList<String[]>(items.size());
+      for (MenuItem item : items){
+         String price = Float.toString((float) item.getPrice());
+         rows.add(new String[]{ item.getName(), item.getType(), price.endsWith(".0") ? price.substring(0, price.length() - 2) : price,
+                                item.getDescription(), item.getImageURL() });
+      }//end for
+      return rows;
+   }//end menuRows
+
+   // the ItemStatus parameters of every line: orderid, itemName, amount, comments
+   private static List<Object[]> itemRows (int orderid, OrderCart cart) {
+      List<Object[]> rows = new ArrayList<Object[]>(cart.size());
+      for (int line = 0; line < cart.size(); ++line)
+         rows.add(new Object[]{ orderid, cart.getName(line), cart.getAmount(line), cart.getComment(line) });
+      return rows;
+   }//end itemRows
+
+   /**
+    * Method to drop a user from the session cache, so the next
+    * openSession reads the profile again. Changes made through this
+    * service do it themselves; call it after changing Users elsewhere.
+    *
+    * @param login the user whose profile changed
+    */
+   public void forgetSession (String login) {
+      if (this._sessions != null)
+         this._sessions.remove(login.stripTrailing());
+   }//end forgetSession
+
+   private Session remember (String login, ResultTable profile) {
+      Session session = new Session(login, profile.getString(0, 1), profile.getString(0, 2));
+      if (this._sessions != null)
+         this._sessions.put(login.stripTrailing(), session);
+      return session;
+   }//end remember
+
+   private OrderState ownState (Session session, int orderid) throws SQLException {
+      KitchenBoard.Order order = this._board == null ? null : this._board.get(orderid);
+      if (order != null)
+         return !order.isPlacedBy(session.getLogin()) ? OrderState.MISSING
+            : order.isPaid() ? OrderState.PAID : OrderState.OPEN;
+      return state(this._esql.executeQueryForTable(
+         "SELECT paid FROM Orders O WHERE O.login = ? AND O.orderid = ?", session.getLogin(), orderid));
+   }//end ownState
+
+   private static OrderState state (ResultTable paid) {
+      if (paid.getRowCount() == 0)
+         return OrderState.MISSING;
+      return paid.getBoolean(0, 0) ? OrderState.PAID : OrderState.OPEN;
+   }//end state
+
+   /*
+    * Runs an UPDATE of ItemStatus that returns the rows it changed,
+    * writes them through to the kitchen board and publishes them.
+    */
+   private int transition (String sql, Object... params) throws SQLException {
+      ResultTable changed = this._esql.executeQueryForTable(sql, params);
+      if (this._board != null)
+         this._board.applyStatus(changed);
+      if (this._events != null && changed.getRowCount() > 0){
+         List<OrderEvent> events = new ArrayList<OrderEvent>(changed.getRowCount());
+         for (int r = 0; r < changed.getRowCount(); ++r)
+            events.add(new OrderEvent(OrderEvent.Type.STATUS, changed.getInt(r, 0), null,
+                                      changed.getString(r, 1), changed.getString(r, 2)));
+         this._events.publish(events);
+      }//end if
+      return changed.getRowCount();
+   }//end transition
+
+   // takes one step from status if the item is still in it at the version
+   private String advance (Session session, int orderid, String itemName,
+                           String status, int version) throws SQLException {
+      String next = nextStatus(status);
+      if (next == null)
+         return null;
+      Integer expected = expected(version);
+      for (int attempt = 0; transition(ADVANCE_ITEM, next, orderid, itemName, status, expected) == 0; ++attempt){
+         ItemVersion found = getItemVersion(session, orderid, itemName);
+         if (found == null || !status.equals(found.getStatus()))
+            return null;
+         conflict(CafeMetrics.Operation.ADVANCE_ITEM, attempt, itemName.trim() + " on order " + orderid);
+         expected = found.getVersion();
+      }//end for
+      return next;
+   }//end advance
+
+   /*
+    * Counts a compare-and-set that missed, and the retry that follows
+    * unless they are used up.
+    */
+   private void conflict (CafeMetrics.Operation op, int attempt, String what) throws SQLException {
+      CafeMetrics metrics = this._esql.getMetrics();
+      metrics.recordConflict(op);
+      if (attempt >= this._maxRetries)
+         throw new SQLException(what + " kept changing, gave up after " + attempt + " retries", "40001");
+      metrics.recordRetry(op);
+   }//end conflict
+
+   // the version a compare-and-set expects, null matches any
+   private static Integer expected (int version) {
+      return version < 0 ? null : Integer.valueOf(version);
+   }//end expected
+
+   private void publish (OrderEvent event) {
+      if (this._events != null)
+         this._events.publish(event);
+   }//end publish
+
+   // staff see every order, customers their own
+   private static boolean visible (Session session, KitchenBoard.Order order) {
+      return session.isStaff() || order.isPlacedBy(session.getLogin());
+   }//end visible
+
+   // {1,2,3}, the text form of an integer[]
+   private static String idArray (int[] ids) {
+      StringBuilder sb = new StringBuilder(ids.length * 8).append('{');
+      for (int i = 0; i < ids.length; ++i){
+         if (i > 0)
+            sb.append(',');
+         sb.append(ids[i]);
+      }//end for
+      return sb.append('}').toString();
+   }//end idArray
+
+   private OrderEventBus events () {
+      if (this._events == null)
+         throw new IllegalStateException("the order feed is turned off (cafe.events=off)");
+      return this._events;
+   }//end events
+
+   private static String blankToEmpty (String s) {
+      return s == null || s.trim().isEmpty() ? "" : s;
+   }//end blankToEmpty
+
+   private static void requireStaff (Session session, String what) {
+      if (!session.isStaff())
+         throw new SecurityException(session + " may not " + what);
+   }//end requireStaff
+
+   private static void requireManager (Session session, String what) {
+      if (!session.isManager())
+         throw new SecurityException(session + " may not " + what);
+   }//end requireManager
+
+}//end OrderService
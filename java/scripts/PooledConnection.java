@@ -0,0 +1,72 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * This class wraps one physical connection owned by a ConnectionPool
+ * together with the bookkeeping the pool needs to validate and evict it.
+ *
+ */
+public class PooledConnection {
+
+   // the physical database connection
+   private final Connection _connection;
+
+   // prepared statements cached on this connection
+   private final StatementCache _statements;
+
+   // System.nanoTime() of the last time the connection went back to the pool
+   private volatile long _lastReturned;
+
+   PooledConnection (Connection connection, int statementCacheSize) {
+      this._connection = connection;
+      this._statements = new StatementCache(connection, statementCacheSize);
+      this._lastReturned = System.nanoTime();
+   }//end PooledConnection
+
+   /**
+    * @return the physical connection, only valid while it is borrowed
+    */
+   public Connection getConnection () {
+      return this._connection;
+   }//end getConnection
+
+   /**
+    * @return the prepared statement cache of this connection
+    */
+   public StatementCache getStatementCache () {
+      return this._statements;
+   }//end getStatementCache
+
+   long getLastReturned () {
+      return this._lastReturned;
+   }//end getLastReturned
+
+   void markReturned () {
+      this._lastReturned = System.nanoTime();
+   }//end markReturned
+
+   /**
+    * Method to close the physical connection, errors are ignored.
+    */
+   void closeQuietly () {
+      this._statements.clear();
+      try{
+         this._connection.close();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+}//end PooledConnection
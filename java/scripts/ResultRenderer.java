@@ -0,0 +1,59 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This interface defines the last stage of executeQueryAndPrintResult:
+ * something that consumes an open result set row by row and writes it
+ * out. Implementations must not hold on to the whole result. Rows that
+ * are answered from memory, like those of the KitchenBoard, are written
+ * through the same renderer so they look the same as queried ones.
+ *
+ */
+public interface ResultRenderer {
+
+   /**
+    * @return the number of rows the driver should fetch per round trip,
+    *         0 lets the driver read the whole result at once
+    */
+   int getFetchSize ();
+
+   /**
+    * @return whether render waits for the user between pages; such a
+    *         renderer is handed rows that were all read already, so no
+    *         connection or transaction is held while it waits
+    */
+   boolean isPaging ();
+
+   /**
+    * Method to write out every row of the result set.
+    *
+    * @param rs an open result set positioned before the first row
+    * @return the number of rows written
+    * @throws java.sql.SQLException when reading the result fails
+    */
+   int render (ResultSet rs) throws SQLException;
+
+   /**
+    * Method to write out rows that are already in memory, laid out the
+    * same way as a result set with these column labels.
+    *
+    * @param header the column labels
+    * @param rows the values of each row, null for SQL NULL
+    * @return the number of rows written
+    */
+   int render (String[] header, List<String[]> rows);
+
+}//end ResultRenderer
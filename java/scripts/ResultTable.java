@@ -0,0 +1,263 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * This class holds a query result column by column. Integer, bigint,
+ * floating point and boolean columns are kept in primitive arrays, every
+ * other column as strings with the blank padding of char(n) removed.
+ * Rows and columns are numbered from 0.
+ *
+ */
+public class ResultTable {
+
+   // storage kind of each column
+   private static final int KIND_INT = 0;
+   private static final int KIND_LONG = 1;
+   private static final int KIND_DOUBLE = 2;
+   private static final int KIND_BOOLEAN = 3;
+   private static final int KIND_STRING = 4;
+
+   private final String[] _names;
+   private final int[] _kinds;
+   private final boolean[] _padded;
+
+   // one of int[], long[], double[], boolean[] or String[] per column
+   private final Object[] _columns;
+   private final boolean[][] _nulls;
+
+   private int _rowCount = 0;
+   private int _capacity;
+
+   private ResultTable (ResultSetMetaData rsmd) throws SQLException {
+      int numCol = rsmd.getColumnCount();
+      this._names = new String[numCol];
+      this._kinds = new int[numCol];
+      this._padded = new boolean[numCol];
+      this._columns = new Object[numCol];
+      this._nulls = new boolean[numCol][];
+      this._capacity = 16;
+      for (int c = 0; c < numCol; ++c){
+         this._names[c] = rsmd.getColumnLabel(c + 1);
+         this._kinds[c] = kindOf(rsmd.getColumnType(c + 1));
+         this._padded[c] = rsmd.getColumnType(c + 1) == Types.CHAR;
+         this._columns[c] = allocate(this._kinds[c], this._capacity);
+         this._nulls[c] = new boolean[this._capacity];
+      }//end for
+   }//end ResultTable
+
+   /**
+    * Method to read every remaining row of a result set.
+    *
+    * @param rs an open result set positioned before the first row
+    * @return the rows, column by column
+    * @throws java.sql.SQLException when reading the result fails
+    */
+   public static ResultTable read (ResultSet rs) throws SQLException {
+      ResultTable table = new ResultTable(rs.getMetaData());
+      int numCol = table._names.length;
+      while (rs.next()){
+         if (table._rowCount == table._capacity)
+            table.grow();
+         int r = table._rowCount++;
+         for (int c = 0; c < numCol; ++c){
+            Object column = table._columns[c];
+            switch (table._kinds[c]){
+               case KIND_INT: ((int[]) column)[r] = rs.getInt(c + 1); break;
+               case KIND_LONG: ((long[]) column)[r] = rs.getLong(c + 1); break;
+               case KIND_DOUBLE: ((double[]) column)[r] = rs.getDouble(c + 1); break;
+               case KIND_BOOLEAN: ((boolean[]) column)[r] = rs.getBoolean(c + 1); break;
+               default:
+                  String value = rs.getString(c + 1);
+                  if (value != null && table._padded[c])
+                     value = value.stripTrailing();
+                  ((String[]) column)[r] = value;
+                  break;
+            }//end switch
+            table._nulls[c][r] = rs.wasNull();
+         }//end for
+      }//end while
+      return table;
+   }//end read
+
+   public int getRowCount () {
+      return this._rowCount;
+   }//end getRowCount
+
+   public int getColumnCount () {
+      return this._names.length;
+   }//end getColumnCount
+
+   public String getColumnName (int col) {
+      return this._names[col];
+   }//end getColumnName
+
+   /**
+    * @param name a column label, compared ignoring case
+    * @return the column index or -1 when there is no such column
+    */
+   public int findColumn (String name) {
+      for (int c = 0; c < this._names.length; ++c)
+         if (this._names[c].equalsIgnoreCase(name))
+            return c;
+      return -1;
+   }//end findColumn
+
+   public boolean isNull (int row, int col) {
+      checkRow(row);
+      return this._nulls[col][row];
+   }//end isNull
+
+   public int getInt (int row, int col) {
+      checkRow(row);
+      switch (this._kinds[col]){
+         case KIND_INT: return ((int[]) this._columns[col])[row];
+         case KIND_LONG: return (int) ((long[]) this._columns[col])[row];
+         case KIND_DOUBLE: return (int) ((double[]) this._columns[col])[row];
+         default: throw wrongType(col, "int");
+      }//end switch
+   }//end getInt
+
+   public long getLong (int row, int col) {
+      checkRow(row);
+      switch (this._kinds[col]){
+         case KIND_INT: return ((int[]) this._columns[col])[row];
+         case KIND_LONG: return ((long[]) this._columns[col])[row];
+         case KIND_DOUBLE: return (long) ((double[]) this._columns[col])[row];
+         default: throw wrongType(col, "long");
+      }//end switch
+   }//end getLong
+
+   public double getDouble (int row, int col) {
+      checkRow(row);
+      switch (this._kinds[col]){
+         case KIND_INT: return ((int[]) this._columns[col])[row];
+         case KIND_LONG: return ((long[]) this._columns[col])[row];
+         case KIND_DOUBLE: return ((double[]) this._columns[col])[row];
+         default: throw wrongType(col, "double");
+      }//end switch
+   }//end getDouble
+
+   public boolean getBoolean (int row, int col) {
+      checkRow(row);
+      if (this._kinds[col] != KIND_BOOLEAN)
+         throw wrongType(col, "boolean");
+      return ((boolean[]) this._columns[col])[row];
+   }//end getBoolean
+
+   /**
+    * @return the value as text, or null for SQL NULL
+    */
+   public String getString (int row, int col) {
+      checkRow(row);
+      if (this._nulls[col][row])
+         return null;
+      Object column = this._columns[col];
+      switch (this._kinds[col]){
+         case KIND_INT: return Integer.toString(((int[]) column)[row]);
+         case KIND_LONG: return Long.toString(((long[]) column)[row]);
+         case KIND_DOUBLE: return Double.toString(((double[]) column)[row]);
+         case KIND_BOOLEAN: return Boolean.toString(((boolean[]) column)[row]);
+         default: return ((String[]) column)[row];
+      }//end switch
+   }//end getString
+
+   /**
+    * @return a copy of an integer column trimmed to the row count
+    */
+   public int[] getIntColumn (int col) {
+      if (this._kinds[col] != KIND_INT)
+         throw wrongType(col, "int");
+      return Arrays.copyOf((int[]) this._columns[col], this._rowCount);
+   }//end getIntColumn
+
+   /**
+    * @return a copy of a bigint column trimmed to the row count
+    */
+   public long[] getLongColumn (int col) {
+      if (this._kinds[col] != KIND_LONG)
+         throw wrongType(col, "long");
+      return Arrays.copyOf((long[]) this._columns[col], this._rowCount);
+   }//end getLongColumn
+
+   /**
+    * @return a copy of a floating point column trimmed to the row count
+    */
+   public double[] getDoubleColumn (int col) {
+      if (this._kinds[col] != KIND_DOUBLE)
+         throw wrongType(col, "double");
+      return Arrays.copyOf((double[]) this._columns[col], this._rowCount);
+   }//end getDoubleColumn
+
+   private void grow () {
+      int capacity = this._capacity * 2;
+      for (int c = 0; c < this._columns.length; ++c){
+         Object column = this._columns[c];
+         switch (this._kinds[c]){
+            case KIND_INT: this._columns[c] = Arrays.copyOf((int[]) column, capacity); break;
+            case KIND_LONG: this._columns[c] = Arrays.copyOf((long[]) column, capacity); break;
+            case KIND_DOUBLE: this._columns[c] = Arrays.copyOf((double[]) column, capacity); break;
+            case KIND_BOOLEAN: this._columns[c] = Arrays.copyOf((boolean[]) column, capacity); break;
+            default: this._columns[c] = Arrays.copyOf((String[]) column, capacity); break;
+         }//end switch
+         this._nulls[c] = Arrays.copyOf(this._nulls[c], capacity);
+      }//end for
+      this._capacity = capacity;
+   }//end grow
+
+   private void checkRow (int row) {
+      if (row < 0 || row >= this._rowCount)
+         throw new IndexOutOfBoundsException("row " + row + " of " + this._rowCount);
+   }//end checkRow
+
+   private IllegalStateException wrongType (int col, String type) {
+      return new IllegalStateException("column " + this._names[col] + " is not " + type);
+   }//end wrongType
+
+   private static int kindOf (int sqlType) {
+      switch (sqlType){
+         case Types.INTEGER:
+         case Types.SMALLINT:
+         case Types.TINYINT:
+            return KIND_INT;
+         case Types.BIGINT:
+            return KIND_LONG;
+         case Types.REAL:
+         case Types.FLOAT:
+         case Types.DOUBLE:
+         case Types.NUMERIC:
+         case Types.DECIMAL:
+            return KIND_DOUBLE;
+         case Types.BOOLEAN:
+         case Types.BIT:
+            return KIND_BOOLEAN;
+         default:
+            return KIND_STRING;
+      }//end switch
+   }//end kindOf
+
+   private static Object allocate (int kind, int capacity) {
+      switch (kind){
+         case KIND_INT: return new int[capacity];
+         case KIND_LONG: return new long[capacity];
+         case KIND_DOUBLE: return new double[capacity];
+         case KIND_BOOLEAN: return new boolean[capacity];
+         default: return new String[capacity];
+      }//end switch
+   }//end allocate
+
+}//end ResultTable
@@ -0,0 +1,31 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This interface turns the current row of a result set into an object.
+ * It is called once per row by Cafe.executeQueryAndMap and reads the
+ * columns with the typed getters, so no intermediate strings are made.
+ *
+ */
+public interface RowMapper<T> {
+
+   /**
+    * @param rs the result set positioned on the row to map
+    * @return the object for this row
+    * @throws java.sql.SQLException when a column cannot be read
+    */
+   T map (ResultSet rs) throws SQLException;
+
+}//end RowMapper
@@ -0,0 +1,74 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+/**
+ * This class defines the user an OrderService call acts for. A session is
+ * created once at log in and passed explicitly to every call, so several
+ * users can be served from one process at the same time. It is immutable
+ * and can be shared between threads.
+ *
+ */
+public class Session {
+
+   private final String _login;
+
+   // Customer, Employee or Manager, without the char(8) padding
+   private final String _type;
+
+   // Users.favItems without the char(400) padding
+   private final String _favItems;
+
+   /**
+    * Creates a new session
+    *
+    * @param login the login of the user
+    * @param type the user type as stored in Users.type
+    * @param favItems the favourite items as stored in Users.favItems
+    */
+   public Session (String login, String type, String favItems) {
+      this._login = login;
+      this._type = type == null ? "" : type.trim();
+      this._favItems = favItems == null ? "" : favItems.trim();
+   }//end Session
+
+   public String getLogin () {
+      return this._login;
+   }//end getLogin
+
+   public String getType () {
+      return this._type;
+   }//end getType
+
+   public String getFavItems () {
+      return this._favItems;
+   }//end getFavItems
+
+   public boolean isCustomer () {
+      return "Customer".equals(this._type);
+   }//end isCustomer
+
+   public boolean isManager () {
+      return "Manager".equals(this._type);
+   }//end isManager
+
+   /**
+    * @return true for employees and managers, who may work on any order
+    */
+   public boolean isStaff () {
+      return "Employee".equals(this._type) || isManager();
+   }//end isStaff
+
+   public String toString () {
+      return this._login.trim() + " (" + this._type + ")";
+   }//end toString
+
+}//end Session
@@ -0,0 +1,380 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class follows one console session: every line the user typed and
+ * when, and how long each menu action kept the program busy. Recorded to
+ * a file, such a trace can be replayed later against another database
+ * with the same timing, see TraceReplay.
+ *
+ * The console flows read their input through Cafe.in; while a session is
+ * traced, Cafe.in is console(), which reads from the source of the trace
+ * of the calling thread. Time spent waiting in readLine is the user's,
+ * so it is left out of the busy time of an action.
+ *
+ * A trace file starts with the magic number, the version and the wall
+ * clock time the session started, in milliseconds. Records follow, each
+ * a kind byte and the microseconds since the previous record as a
+ * variable length number (7 bits a byte, low bits first):
+ *
+ *   INPUT         the line the user typed: its length in UTF-8 bytes,
+ *                 as a variable length number, and the bytes
+ *   END_OF_INPUT  the input was closed
+ *   ACTION        a menu action finished: its name like INPUT, and the
+ *                 microseconds it was busy as a variable length number
+ *
+ * Most records take a handful of bytes.
+ *
+ * A trace holds every line typed, passwords included, so record() makes
+ * its file readable and writable by the owner only where the file system
+ * supports POSIX permissions. Keep traces away from anyone who should not
+ * see the users' credentials.
+ *
+ */
+public class SessionTrace implements Closeable {
+
+   private static final int MAGIC = 0x43414654;
+   private static final int VERSION = 1;
+
+   public static final byte INPUT = 1;
+   public static final byte END_OF_INPUT = 2;
+   public static final byte ACTION = 3;
+
+   /**
+    * One record of a trace file.
+    */
+   public static final class Record {
+      private final byte _kind;
+      private final long _offsetNanos;
+      private final String _text;
+      private final long _busyNanos;
+
+      Record (byte kind, long offsetNanos, String text, long busyNanos) {
+         this._kind = kind;
+         this._offsetNanos = offsetNanos;
+         this._text = text;
+         this._busyNanos = busyNanos;
+      }//end Record
+
+      public byte getKind () {
+         return this._kind;
+      }//end getKind
+
+      /**
+       * @return when it happened, in nanoseconds since the session started
+       */
+      public long getOffsetNanos () {
+         return this._offsetNanos;
+      }//end getOffsetNanos
+
+      /**
+       * @return the line typed for INPUT, the action name for ACTION
+       */
+      public String getText () {
+         return this._text;
+      }//end getText
+
+      public long getBusyNanos () {
+         return this._busyNanos;
+      }//end getBusyNanos
+   }//end Record
+
+   /**
+    * A trace file as read back.
+    */
+   public static final class Trace {
+      private final String _name;
+      private final long _startMillis;
+      private final List<Record> _records;
+
+      Trace (String name, long startMillis, List<Record> records) {
+         this._name = name;
+         this._startMillis = startMillis;
+         this._records = records;
+      }//end Trace
+
+      public String getName () {
+         return this._name;
+      }//end getName
+
+      /**
+       * @return the wall clock time the session started
+       */
+      public long getStartMillis () {
+         return this._startMillis;
+      }//end getStartMillis
+
+      public List<Record> getRecords () {
+         return this._records;
+      }//end getRecords
+   }//end Trace
+
+   // the session of each thread that runs console flows under a trace
+   private static final ThreadLocal<SessionTrace> CURRENT = new ThreadLocal<SessionTrace>();
+
+   // Cafe.in while sessions are traced
+   private static final BufferedReader CONSOLE = new BufferedReader(Reader.nullReader()) {
+      public String readLine () throws IOException {
+         SessionTrace trace = CURRENT.get();
+         if (trace == null)
+            throw new IOException("no traced session on " + Thread.currentThread().getName());
+         return trace.readLine();
+      }//end readLine
+   };
+
+   // where the user's lines come from
+   private final BufferedReader _source;
+
+   // where records go, null when the session is only measured
+   private final DataOutputStream _out;
+
+   // action name -> busy time, null when the session is only recorded
+   private final Map<String, LatencyHistogram> _busy;
+
+   private final long _start = System.nanoTime();
+
+   // nanoseconds since _start of the last record written
+   private long _last = 0;
+
+   // nanoseconds spent waiting for the user so far
+   private long _waited = 0;
+
+   /**
+    * Creates a new trace of a session starting now
+    *
+    * @param source where the lines the user types come from
+    * @param out where the trace file is written, or null
+    * @param busy where the busy time of each action is counted, or null;
+    *        it may be shared by sessions on several threads
+    * @throws java.io.IOException when the header cannot be written
+    */
+   public SessionTrace (BufferedReader source, OutputStream out, Map<String, LatencyHistogram> busy) throws IOException {
+      this._source = source;
+      this._out = out == null ? null : new DataOutputStream(new BufferedOutputStream(out));
+      this._busy = busy;
+      if (this._out != null){
+         this._out.writeInt(MAGIC);
+         this._out.writeShort(VERSION);
+         this._out.writeLong(System.currentTimeMillis());
+         this._out.flush();
+      }//end if
+   }//end SessionTrace
+
+   /**
+    * Method to start recording a session to a new file, which only its
+    * owner may read since it will hold the passwords typed.
+    *
+    * @param source where the lines the user types come from
+    * @param dir the directory the file is created in
+    * @return the trace
+    * @throws java.io.IOException when the file cannot be created
+    */
+   public static SessionTrace record (BufferedReader source, File dir) throws IOException {
+      dir.mkdirs();
+      String name = "cafe-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date())
+         + "-" + ProcessHandle.current().pid() + "-" + Thread.currentThread().getId() + ".trace";
+      Path file = new File(dir, name).toPath();
+      try{
+         Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+      }catch (UnsupportedOperationException e){
+         // not a POSIX file system, the directory's protection applies
+         Files.createFile(file);
+      }//end try
+      return new SessionTrace(source, Files.newOutputStream(file), null);
+   }//end record
+
+   /**
+    * @return the reader Cafe.in is set to while sessions are traced
+    */
+   public static BufferedReader console () {
+      return CONSOLE;
+   }//end console
+
+   /**
+    * Method to trace the console flows the calling thread runs from now
+    * on, or to stop tracing them.
+    *
+    * @param trace the session, or null
+    */
+   public static void setCurrent (SessionTrace trace) {
+      if (trace == null)
+         CURRENT.remove();
+      else
+         CURRENT.set(trace);
+   }//end setCurrent
+
+   /**
+    * @return the session traced on the calling thread, or null
+    */
+   public static SessionTrace current () {
+      return CURRENT.get();
+   }//end current
+
+   /**
+    * Method to read the next line of the user and record it.
+    *
+    * @return the line, or null when the input is closed
+    * @throws java.io.IOException when the line cannot be read or recorded
+    */
+   public String readLine () throws IOException {
+      long before = System.nanoTime();
+      String line = this._source.readLine();
+      long now = System.nanoTime();
+      this._waited += now - before;
+      if (this._out != null){
+         if (line == null){
+            header(END_OF_INPUT, now);
+         }else{
+            header(INPUT, now);
+            writeText(line);
+         }//end if
+      }//end if
+      return line;
+   }//end readLine
+
+   /**
+    * @return the nanoseconds spent waiting for the user so far
+    */
+   public long waited () {
+      return this._waited;
+   }//end waited
+
+   /**
+    * Method to note that a menu action finished.
+    *
+    * @param name the action
+    * @param startNanos System.nanoTime() when it started
+    * @param waitedBefore waited() when it started
+    */
+   public void action (String name, long startNanos, long waitedBefore) {
+      long now = System.nanoTime();
+      long busy = Math.max(0, now - startNanos - (this._waited - waitedBefore));
+      if (this._busy != null)
+         this._busy.computeIfAbsent(name, n -> new LatencyHistogram()).record(busy);
+      if (this._out == null)
+         return;
+      try{
+         header(ACTION, now);
+         writeText(name);
+         writeVarLong(busy / 1000);
+         this._out.flush();
+      }catch (IOException e){
+         System.err.println("could not write the session trace: " + e.getMessage());
+      }//end try
+   }//end action
+
+   public void close () throws IOException {
+      if (this._out != null)
+         this._out.close();
+   }//end close
+
+   /**
+    * Method to read a trace file back.
+    *
+    * @param file the file
+    * @return the trace; a file cut short ends after its last whole record
+    * @throws java.io.IOException when the file cannot be read or is not a
+    *         trace
+    */
+   public static Trace read (File file) throws IOException {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+         if (in.readInt() != MAGIC)
+            throw new IOException(file + " is not a session trace");
+         int version = in.readShort();
+         if (version != VERSION)
+            throw new IOException(file + " is a version " + version + " trace, this reads version " + VERSION);
+         long startMillis = in.readLong();
+         List<Record> records = new ArrayList<Record>();
+         long offset = 0;
+         try{
+            int kind;
+            while ((kind = in.read()) >= 0){
+               offset += readVarLong(in) * 1000;
+               if (kind == INPUT)
+                  records.add(new Record(INPUT, offset, readText(in), 0));
+               else if (kind == END_OF_INPUT)
+                  records.add(new Record(END_OF_INPUT, offset, null, 0));
+               else if (kind == ACTION)
+                  records.add(new Record(ACTION, offset, readText(in), readVarLong(in) * 1000));
+               else
+                  throw new IOException(file + " has an unknown record kind " + kind);
+            }//end while
+         }catch (EOFException e){
+            // the session was cut off in the middle of a record
+         }//end try
+         return new Trace(file.getName(), startMillis, records);
+      }//end try
+   }//end read
+
+   // kind and the time since the last record, in whole microseconds
+   private void header (byte kind, long now) throws IOException {
+      long offset = now - this._start;
+      long delta = (offset - this._last) / 1000;
+      this._last += delta * 1000;
+      this._out.writeByte(kind);
+      writeVarLong(delta);
+   }//end header
+
+   private void writeText (String text) throws IOException {
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      this._out.write(bytes);
+   }//end writeText
+
+   private void writeVarLong (long value) throws IOException {
+      while ((value & ~0x7FL) != 0){
+         this._out.writeByte((int) ((value & 0x7F) | 0x80));
+         value >>>= 7;
+      }//end while
+      this._out.writeByte((int) value);
+   }//end writeVarLong
+
+   private static String readText (DataInputStream in) throws IOException {
+      byte[] bytes = new byte[(int) readVarLong(in)];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }//end readText
+
+   private static long readVarLong (DataInputStream in) throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7){
+         int b = in.readUnsignedByte();
+         value |= (long) (b & 0x7F) << shift;
+         if ((b & 0x80) == 0)
+            return value;
+      }//end for
+      throw new IOException("malformed number in session trace");
+   }//end readVarLong
+
+}//end SessionTrace
@@ -0,0 +1,113 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class defines the Java Flight Recorder event for one SQL round
+ * trip made by a Cafe execute* method. It carries the statement text,
+ * the rows returned or affected and an estimate of the bytes sent and
+ * read, and names the CafeOperationEvent running on the same thread.
+ *
+ * Like CafeOperationEvent it is disabled by default. While neither event
+ * is recorded, end() returns right after two checks and nothing about
+ * the statement is measured.
+ *
+ */
+@Name("cafe.SqlRoundTrip")
+@Label("Cafe SQL Round Trip")
+@Category("Cafe")
+@Description("One statement sent by a Cafe execute* method")
+@Enabled(false)
+public class SqlRoundTripEvent extends Event {
+
+   @Label("SQL")
+   String sql;
+
+   @Label("Operation")
+   @Description("The cafe operation the statement belongs to")
+   String operation;
+
+   @Label("Parameters")
+   int parameterCount;
+
+   @Label("Rows")
+   @Description("Rows returned or affected, -1 when the statement failed")
+   long rowCount = -1;
+
+   @Label("Parameter Bytes")
+   @DataAmount
+   long parameterBytes;
+
+   @Label("Result Bytes")
+   @Description("Bytes of the values read, -1 when the rows were streamed to a renderer")
+   @DataAmount
+   long resultBytes = -1;
+
+   /**
+    * Method to finish the round trip started with new SqlRoundTripEvent()
+    * and begin(): commits the event and adds it to the current operation
+    * when either is recorded.
+    *
+    * @param event the event begun before the statement ran
+    * @param sql the statement text
+    * @param params the values bound to it
+    * @param rows rows returned or affected, -1 when it failed
+    * @param result a ResultTable or List of rows that was read, or null
+    */
+   static void end (SqlRoundTripEvent event, String sql, Object[] params, long rows, Object result) {
+      CafeOperationEvent op = CafeOperationEvent.current();
+      if (op == null && !event.isEnabled())
+         return;
+      event.end();
+      long paramBytes = 0;
+      for (Object p : params)
+         paramBytes += p == null ? 0 : String.valueOf(p).length();
+      long resultBytes = result == null ? -1 : bytes(result);
+      if (op != null)
+         op.addRoundTrip(rows, paramBytes + Math.max(0, resultBytes));
+      if (!event.shouldCommit())
+         return;
+      event.sql = sql;
+      event.operation = op == null ? null : op.getOperation();
+      event.parameterCount = params.length;
+      event.rowCount = rows;
+      event.parameterBytes = paramBytes;
+      event.resultBytes = resultBytes;
+      event.commit();
+   }//end end
+
+   private static long bytes (Object result) {
+      long bytes = 0;
+      if (result instanceof ResultTable){
+         ResultTable table = (ResultTable) result;
+         for (int r = 0; r < table.getRowCount(); ++r)
+            for (int c = 0; c < table.getColumnCount(); ++c)
+               if (!table.isNull(r, c))
+                  bytes += table.getString(r, c).length();
+      }else if (result instanceof List){
+         for (Object row : (List<?>) result)
+            if (row instanceof List)
+               for (Object value : (List<?>) row)
+                  bytes += value == null ? 0 : value.toString().length();
+      }//end if
+      return bytes;
+   }//end bytes
+
+}//end SqlRoundTripEvent
@@ -0,0 +1,105 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the most recently used PreparedStatements of one
+ * connection keyed by their SQL text. Reusing the same PreparedStatement
+ * lets the PostgreSQL driver switch to a named server side statement, so
+ * the query is parsed and planned once instead of on every call.
+ *
+ * A cache belongs to exactly one PooledConnection and is only touched by
+ * the thread that currently borrows it, so it is not synchronized.
+ *
+ */
+public class StatementCache {
+
+   private final Connection _connection;
+   private final int _capacity;
+   private final LinkedHashMap<String, PreparedStatement> _statements;
+
+   private long _hits = 0;
+   private long _misses = 0;
+
+   /**
+    * Creates a new cache for the given connection
+    *
+    * @param connection the connection statements are prepared on
+    * @param capacity the number of statements kept before the least
+    *        recently used one is closed, at least one
+    */
+   public StatementCache (Connection connection, int capacity) {
+      this._connection = connection;
+      this._capacity = Math.max(1, capacity);
+      this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+         protected boolean removeEldestEntry (Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= StatementCache.this._capacity)
+               return false;
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Method to get a PreparedStatement for the given SQL text, preparing
+    * it on the connection if it is not cached yet. The statement must not
+    * be closed by the caller.
+    *
+    * @param sql the SQL text with ? placeholders
+    * @return the cached statement with its parameters cleared
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare (String sql) throws SQLException {
+      PreparedStatement ps = this._statements.get(sql);
+      if (ps != null && !ps.isClosed()){
+         ++this._hits;
+         ps.clearParameters();
+         return ps;
+      }//end if
+      ++this._misses;
+      ps = this._connection.prepareStatement(sql);
+      this._statements.put(sql, ps);
+      return ps;
+   }//end prepare
+
+   public long getHits () {
+      return this._hits;
+   }//end getHits
+
+   public long getMisses () {
+      return this._misses;
+   }//end getMisses
+
+   /**
+    * Method to close every cached statement.
+    */
+   public void clear () {
+      for (PreparedStatement ps : this._statements.values())
+         closeQuietly(ps);
+      this._statements.clear();
+   }//end clear
+
+   private static void closeQuietly (PreparedStatement ps) {
+      try{
+         ps.close();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+}//end StatementCache
@@ -0,0 +1,215 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ */
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * This class renders a result set as aligned text columns. Rows are read
+ * one page at a time, so only a page is ever held in memory, and each
+ * page is laid out with column widths computed from its own rows and
+ * written through one buffered writer. The header is repeated on every
+ * page and a summary line with the row rate follows the last page.
+ *
+ */
+public class TableRenderer implements ResultRenderer {
+
+   private static final String COLUMN_GAP = "  ";
+
+   private final OutputStream _out;
+   private final int _fetchSize;
+   private final int _pageSize;
+
+   // when not null the user is asked to continue after every full page,
+   // on the console it supplies at that moment
+   private final Supplier<BufferedReader> _pager;
+
+   // print the row count and rows/s after the table
+   private final boolean _stats;
+
+   /**
+    * Creates a new renderer
+    *
+    * @param out where the table is written, it is flushed but never closed
+    * @param fetchSize rows fetched per round trip
+    * @param pageSize rows laid out together
+    * @param pager the console to wait on between pages, asked for at every
+    *        page so a console swapped in later is used, or null to not
+    *        pause
+    * @param stats whether to print the summary line
+    */
+   public TableRenderer (OutputStream out, int fetchSize, int pageSize,
+                         Supplier<BufferedReader> pager, boolean stats) {
+      this._out = out;
+      this._fetchSize = Math.max(0, fetchSize);
+      this._pageSize = Math.max(1, pageSize);
+      this._pager = pager;
+      this._stats = stats;
+   }//end TableRenderer
+
+   public int getFetchSize () {
+      return this._fetchSize;
+   }//end getFetchSize
+
+   public boolean isPaging () {
+      return this._pager != null;
+   }//end isPaging
+
+   // the rows of one render call, read one at a time
+   private interface RowSource {
+      // the next row, or null after the last one
+      String[] next () throws SQLException;
+   }//end RowSource
+
+   public int render (final ResultSet rs) throws SQLException {
+      ResultSetMetaData rsmd = rs.getMetaData();
+      final int numCol = rsmd.getColumnCount();
+
+      // the column names are read once, not for every row
+      String[] header = new String[numCol];
+      for (int i = 0; i < numCol; ++i)
+         header[i] = rsmd.getColumnLabel(i + 1);
+
+      return render(header, () -> {
+         if (!rs.next())
+            return null;
+         String[] row = new String[numCol];
+         for (int i = 0; i < numCol; ++i){
+            String value = rs.getString(i + 1);
+            // char(n) columns come back blank padded
+            row[i] = value == null ? "null" : value.stripTrailing();
+         }//end for
+         return row;
+      });
+   }//end render
+
+   public int render (String[] header, List<String[]> rows) {
+      final Iterator<String[]> it = rows.iterator();
+      try{
+         return render(header, () -> {
+            if (!it.hasNext())
+               return null;
+            String[] row = it.next().clone();
+            for (int i = 0; i < row.length; ++i)
+               if (row[i] == null)
+                  row[i] = "null";
+            return row;
+         });
+      }catch (SQLException e){
+         // only a result set source throws
+         throw new IllegalStateException(e);
+      }//end try
+   }//end render
+
+   private int render (String[] header, RowSource rows) throws SQLException {
+      long start = System.nanoTime();
+      PrintWriter writer = new PrintWriter(new BufferedWriter(
+         new OutputStreamWriter(this._out), 1 << 16), false);
+      String[][] page = new String[this._pageSize][];
+      int inPage = 0;
+      int rowCount = 0;
+      int pageCount = 0;
+      try{
+         // one row ahead, so the user is not asked to go on after the last page
+         String[] row = rows.next();
+         while (row != null){
+            page[inPage++] = row;
+            ++rowCount;
+            row = rows.next();
+            if (inPage == this._pageSize){
+               writePage(writer, header, page, inPage, ++pageCount);
+               inPage = 0;
+               if (row != null && !continuePaging(writer))
+                  break;
+            }//end if
+         }//end while
+         if (inPage > 0)
+            writePage(writer, header, page, inPage, ++pageCount);
+
+         if (this._stats && rowCount > 0){
+            double seconds = (System.nanoTime() - start) / 1e9;
+            writer.printf("(%d row(s) in %.1f ms, %.0f rows/s)%n", rowCount,
+               seconds * 1000.0, seconds > 0 ? rowCount / seconds : 0.0);
+         }//end if
+      }finally{
+         writer.flush();
+      }//end try
+      return rowCount;
+   }//end render
+
+   private void writePage (PrintWriter writer, String[] header, String[][] page,
+                           int rows, int pageNumber) {
+      int numCol = header.length;
+      int[] width = new int[numCol];
+      for (int c = 0; c < numCol; ++c)
+         width[c] = header[c].length();
+      for (int r = 0; r < rows; ++r)
+         for (int c = 0; c < numCol; ++c)
+            width[c] = Math.max(width[c], page[r][c].length());
+
+      if (pageNumber > 1)
+         writer.println();
+      writeRow(writer, header, width);
+      for (int c = 0; c < numCol; ++c){
+         if (c > 0)
+            writer.print(COLUMN_GAP);
+         for (int i = 0; i < width[c]; ++i)
+            writer.print('-');
+      }//end for
+      writer.println();
+      for (int r = 0; r < rows; ++r){
+         writeRow(writer, page[r], width);
+         page[r] = null;
+      }//end for
+   }//end writePage
+
+   private static void writeRow (PrintWriter writer, String[] row, int[] width) {
+      for (int c = 0; c < row.length; ++c){
+         if (c > 0)
+            writer.print(COLUMN_GAP);
+         writer.print(row[c]);
+         // the last column is not padded
+         if (c < row.length - 1)
+            for (int i = row[c].length(); i < width[c]; ++i)
+               writer.print(' ');
+      }//end for
+      writer.println();
+   }//end writeRow
+
+   /*
+    * Asks whether to show the next page when a pager is set.
+    * @return false when the user wants to stop
+    */
+   private boolean continuePaging (PrintWriter writer) {
+      if (this._pager == null)
+         return true;
+      writer.print("-- more (Enter to continue, q to stop) -- ");
+      writer.flush();
+      try{
+         String answer = this._pager.get().readLine();
+         return answer == null || !answer.trim().equalsIgnoreCase("q");
+      }catch (IOException e){
+         return false;
+      }//end try
+   }//end continuePaging
+
+}//end TableRenderer
@@ -0,0 +1,15 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the loader next to the interface
+mkdir -p $DIR/../classes
+javac -d $DIR/../classes -cp $DIR/../classes:$CLASSPATH $DIR/*.java
+
+#load the csv files from the data directory through COPY FROM STDIN
+#rejected rows are written to rejects.txt
+#this replaces sql/src/load_data.sql: run it on empty tables, made with
+#sql/scripts/create_db.sh --no-data
+java -cp $DIR/../classes:$CLASSPATH BulkLoader mydb $PGPORT $DIR/../../data rejects.txt
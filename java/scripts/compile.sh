@@ -4,8 +4,9 @@ DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 #set the script to exit out on error
 set -e
 
-# compile the java program
-javac Cafe.java
+# compile the java program together with the classes it is split into
+mkdir -p $DIR/../classes
+javac -d $DIR/../classes -cp $DIR/../classes:$CLASSPATH $DIR/*.java
 
 #run the java program
 #Use your database name and portss
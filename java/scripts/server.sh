@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+#set the script to exit out on error
+set -e
+
+# compile the server together with the rest of the interface
+mkdir -p $DIR/../classes
+javac -d $DIR/../classes -cp $DIR/../classes:$CLASSPATH $DIR/*.java
+
+#run the server, the last argument is the HTTP port
+#Use your database name and port
+java $JAVA_OPTS -cp $DIR/../classes:$CLASSPATH CafeServer mydb $PGPORT 8080
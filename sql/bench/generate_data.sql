@@ -0,0 +1,34 @@
+/*
+ * Fills freshly created tables with a large synthetic dataset for the
+ * index benchmark: 100k users, 5k menu items, 1M orders spread over the
+ * last year and two ItemStatus rows per order.
+ */
+
+INSERT INTO Users (login, phoneNum, password, favItems, type)
+SELECT 'user' || g, '+1' || lpad(g::text, 10, '0'), 'pw' || g, '',
+       CASE WHEN g % 100 = 0 THEN 'Employee' ELSE 'Customer' END
+FROM generate_series(1, 100000) g;
+
+INSERT INTO Menu (itemName, type, price, description, imageURL)
+SELECT (ARRAY['Latte','Mocha','Donut','Bagel','Muffin','Soup','Sandwich','Tea','Juice','Cookie'])[1 + g % 10] || ' ' || g,
+       (ARRAY['Drinks','Sweets','Soup','Sandwiches','Pastries'])[1 + g % 5],
+       round((1 + random() * 9)::numeric, 2),
+       'Generated menu item number ' || g, ''
+FROM generate_series(1, 5000) g;
+
+-- orders older than a day are paid, about half of the last day is not
+INSERT INTO Orders (login, paid, timeStampRecieved, total)
+SELECT 'user' || (1 + (random() * 99999)::int),
+       ts < NOW() - '1 day'::INTERVAL OR random() < 0.5,
+       ts, round((random() * 50)::numeric, 2)
+FROM (SELECT NOW() - random() * '365 days'::INTERVAL AS ts
+      FROM generate_series(1, 1000000)) t;
+
+INSERT INTO ItemStatus (orderid, itemName, amount, lastUpdated, status, comments)
+SELECT O.orderid, M.itemName, 1 + (random() * 3)::int, O.timeStampRecieved,
+       CASE WHEN O.paid THEN 'Finished' ELSE 'Has Not Started' END, ''
+FROM Orders O
+CROSS JOIN LATERAL (VALUES (1 + O.orderid % 5000), (1 + (O.orderid * 7 + 3) % 5000)) K(n)
+JOIN (SELECT itemName, row_number() OVER (ORDER BY itemName) AS n FROM Menu) M ON M.n = K.n;
+
+SELECT setval('orders_orderid_seq', (SELECT MAX(orderid) FROM Orders));
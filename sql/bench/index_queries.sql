@@ -0,0 +1,22 @@
+/*
+ * The queries Cafe.java issues on its main access paths, with fixed
+ * sample values. Run before and after create_indexes.sql.
+ */
+
+\echo '### ViewOrderHistory'
+EXPLAIN (ANALYZE, BUFFERS) SELECT orderid FROM Orders WHERE login = 'user4242' ORDER BY timeStampRecieved DESC LIMIT 5;
+
+\echo '### AddOrder id lookup (before RETURNING)'
+EXPLAIN (ANALYZE, BUFFERS) SELECT orderid, timeStampRecieved FROM Orders O WHERE O.timeStampRecieved = (SELECT MAX(O2.timeStampRecieved) FROM Orders O2 WHERE O2.login = 'user4242');
+
+\echo '### ViewCurrentOrder'
+EXPLAIN (ANALYZE, BUFFERS) SELECT orderid, login, timeStampRecieved, total FROM Orders WHERE paid = 'false' AND timeStampRecieved >= NOW() - '1 day'::INTERVAL;
+
+\echo '### BrowseMenuName'
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM Menu M WHERE M.ItemName::text LIKE '%Latte 42%';
+
+\echo '### BrowseMenuType'
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM Menu M WHERE M.Type::text LIKE '%Pastr%';
+
+\echo '### ViewOrderStatus'
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM ItemStatus I WHERE I.orderid = 424242;
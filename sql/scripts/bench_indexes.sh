@@ -0,0 +1,34 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# Builds a large generated dataset in its own database and runs the Cafe
+# access path queries before and after create_indexes.sql.
+# Usage: ./bench_indexes.sh [dbname]   (default cafe_bench, it is rebuilt)
+DB=${1:-cafe_bench}
+PSQL="psql -h 127.0.0.1 -q"
+
+createdb -h 127.0.0.1 $DB 2>/dev/null || true
+$PSQL $DB < $DIR/../src/create_tables.sql 2>/dev/null
+echo "Generating data..."
+$PSQL $DB < $DIR/../bench/generate_data.sql
+$PSQL $DB -c "VACUUM ANALYZE"
+
+echo "Running queries without indexes..."
+$PSQL $DB < $DIR/../bench/index_queries.sql > index_bench_before.txt
+
+$PSQL $DB < $DIR/../src/create_indexes.sql
+$PSQL $DB -c "VACUUM ANALYZE"
+
+echo "Running queries with indexes..."
+$PSQL $DB < $DIR/../bench/index_queries.sql > index_bench_after.txt
+
+# one line per query: name, execution time before, execution time after
+summary () {
+   grep -E '^###|Execution Time' $1 | sed -e 's/^### //' -e 's/.*Execution Time: //' | paste - -
+}
+echo
+printf "%-45s %-15s %-15s\n" "query" "before" "after"
+paste <(summary index_bench_before.txt) <(summary index_bench_after.txt | cut -f2) |
+   awk -F'\t' '{ printf "%-45s %-15s %-15s\n", $1, $2, $3 }'
+echo
+echo "Full plans are in index_bench_before.txt and index_bench_after.txt"
@@ -1,5 +1,10 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 psql -h 127.0.0.1 mydb < $DIR/../src/create_tables.sql
+# --no-data leaves the tables empty for java/scripts/bulk_load.sh, which
+# loads the same files from the client side and fails on rows already there
+if [ "$1" != "--no-data" ]; then
+   psql -h 127.0.0.1 mydb < $DIR/../src/load_data.sql
+fi
+# indexes are built after the bulk load, which is faster than keeping them up to date row by row
 psql -h 127.0.0.1 mydb < $DIR/../src/create_indexes.sql
-psql -h 127.0.0.1 mydb < $DIR/../src/load_data.sql
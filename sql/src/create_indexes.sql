@@ -0,0 +1,36 @@
+/*
+ * Secondary indexes for the access paths Cafe.java uses. The primary
+ * keys already cover lookups by Users.login, Menu.itemName,
+ * Orders.orderid and ItemStatus(orderid, itemName).
+ */
+
+-- ViewOrderHistory: WHERE login = ? ORDER BY timeStampRecieved DESC LIMIT 5
+-- is answered by reading the first five entries for the login.
+CREATE INDEX orders_login_time_idx ON Orders (login, timeStampRecieved DESC);
+
+-- ViewCurrentOrder: paid = false AND timeStampRecieved >= NOW() - 1 day.
+-- NOW() cannot appear in an index predicate, so the index holds every
+-- unpaid order by time and the range scan picks the last day. Paid
+-- orders, the vast majority, never enter it.
+CREATE INDEX orders_unpaid_time_idx ON Orders (timeStampRecieved) WHERE paid = false;
+
+-- ViewCurrentOrder refreshes: WHERE updatedAt >= ? reads only the orders
+-- written since the last refresh, paid or not.
+CREATE INDEX orders_updated_idx ON Orders (updatedAt);
+
+-- BrowseMenuName / BrowseMenuType: LIKE '%word%' cannot use a B-tree.
+-- Trigram indexes are built on the text value of the char(n) columns,
+-- which is what the queries compare (itemName::text LIKE ?).
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX menu_itemname_trgm_idx ON Menu USING gin ((itemName::text) gin_trgm_ops);
+CREATE INDEX menu_type_trgm_idx ON Menu USING gin ((type::text) gin_trgm_ops);
+
+-- ViewOrderStatus / EmployeeUpdateOrder: WHERE orderid = ? is served by
+-- the leading column of the ItemStatus primary key (orderid, itemName),
+-- so a separate ItemStatus(orderid) index would only slow down writes.
+
+-- Kitchen batch update (advance a menu item on all unpaid orders):
+-- WHERE itemName = ? AND status <> 'Finished', joined to the unpaid
+-- orders. Only lines still in the kitchen are indexed, so the index
+-- stays small as orders finish.
+CREATE INDEX itemstatus_pending_item_idx ON ItemStatus (itemName) WHERE status <> 'Finished';
@@ -25,6 +25,8 @@ CREATE TABLE Orders(
 	paid boolean,
 	timeStampRecieved timestamp NOT NULL,
 	total real NOT NULL,
+	updatedAt timestamp NOT NULL DEFAULT NOW(),
+	version integer NOT NULL DEFAULT 0,
 	PRIMARY KEY(orderid));
 
 CREATE TABLE ItemStatus(
@@ -34,6 +36,7 @@ CREATE TABLE ItemStatus(
 	lastUpdated timestamp NOT NULL,
 	status char(20),
 	comments char(130), 
+	version integer NOT NULL DEFAULT 0,
 	PRIMARY KEY(orderid,itemName),
 	FOREIGN KEY(orderid) REFERENCES Orders(orderid),
 	FOREIGN KEY(itemName) REFERENCES Menu(itemName));